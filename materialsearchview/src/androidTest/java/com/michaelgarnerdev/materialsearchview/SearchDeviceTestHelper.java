@@ -0,0 +1,68 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.test.InstrumentationRegistry;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchDeviceTestHelper opens the shared search database for tests that run on a device, starting from an empty
+ * history.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+final class SearchDeviceTestHelper {
+
+    private SearchDeviceTestHelper() {
+    }
+
+    /**
+     * Acquires the database and deletes every search. The database may still be open from an earlier test, waiting for
+     * its idle close, so its file is not deleted.
+     */
+    static void open() throws InterruptedException {
+        final CountDownLatch deleted = new CountDownLatch(1);
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                SearchDatabase.acquire(InstrumentationRegistry.getTargetContext());
+                SearchDatabase.deleteDatabase(new SearchDatabase.DatabaseTaskListener() {
+                    @Override
+                    public void onDatabaseEditSuccess() {
+                        deleted.countDown();
+                    }
+
+                    @Override
+                    public void onDatabaseEditFailure() {
+                        deleted.countDown();
+                    }
+                });
+            }
+        });
+        assertTrue(deleted.await(1, TimeUnit.MINUTES));
+    }
+
+    static void close() {
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                SearchDatabase.release();
+            }
+        });
+    }
+}
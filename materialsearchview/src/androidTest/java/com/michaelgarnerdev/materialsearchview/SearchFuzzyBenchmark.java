@@ -0,0 +1,108 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchFuzzyBenchmark types misspelled searches one keystroke at a time against an index of {@link #ENTRIES}
+ * searches on a device, and checks that the 99th percentile of fuzzy lookups stays within {@link #BUDGET_NANOS}. The
+ * latencies are logged under {@link #TAG}.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class SearchFuzzyBenchmark {
+    private static final String TAG = "SearchFuzzy";
+    private static final int ENTRIES = 100000;
+    private static final int LIMIT = 5;
+    private static final long BUDGET_NANOS = 5000000;
+    private static final int WARM_UP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 20;
+    private static final String[] WORDS = {"running", "shoes", "shirt", "runner", "rain", "jacket", "nike", "adidas",
+            "short", "sport", "watch", "water", "bottle", "red", "blue", "bag", "trail", "socks", "cap", "yoga"};
+    private static final String[] TYPED = {"runnign sh", "shoez", "jakcet red", "wtaer bottel", "adidsa", "yoag m",
+            "trial ru", "spotr watc", "xyzzy"};
+
+    private final SearchIndex mIndex = new SearchIndex();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        ArrayList<SearchSuggestion> searches = new ArrayList<>(ENTRIES);
+        double[] frecencies = new double[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            String term = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            searches.add(new SearchSuggestion(term, i));
+            frecencies[i] = i;
+        }
+        mIndex.load(searches, frecencies);
+        assertEquals(ENTRIES, mIndex.size());
+    }
+
+    @Test
+    public void keystrokesStayWithinBudget() {
+        for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+            typeAll();
+        }
+        ArrayList<Long> durations = new ArrayList<>();
+        for (int round = 0; round < MEASURED_ROUNDS; round++) {
+            durations.addAll(typeAll());
+        }
+        long[] sorted = new long[durations.size()];
+        for (int i = 0; i < sorted.length; i++) {
+            sorted[i] = durations.get(i);
+        }
+        Arrays.sort(sorted);
+        long median = sorted[sorted.length / 2];
+        long p99 = sorted[sorted.length * 99 / 100];
+        Log.i(TAG, String.format(Locale.US, "fuzzy lookups over %d entries: p50 %.3f ms, p99 %.3f ms, max %.3f ms",
+                ENTRIES, median / 1e6, p99 / 1e6, sorted[sorted.length - 1] / 1e6));
+        assertTrue(String.format(Locale.US, "p99 %.3f ms", p99 / 1e6), p99 < BUDGET_NANOS);
+    }
+
+    /**
+     * Types each search one character at a time.
+     *
+     * @return How long each keystroke's lookup took, in nanoseconds.
+     */
+    @NonNull
+    private List<Long> typeAll() {
+        ArrayList<Long> durations = new ArrayList<>();
+        for (String typed : TYPED) {
+            for (int length = 1; length <= typed.length(); length++) {
+                String prefix = typed.substring(0, length);
+                long start = System.nanoTime();
+                mIndex.fuzzyStartingWith(prefix, LIMIT, MaterialSearchView.RANKING_MODE_FRECENCY);
+                durations.add(System.nanoTime() - start);
+            }
+        }
+        return durations;
+    }
+}
@@ -0,0 +1,107 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.io.ByteArrayInputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchImportBenchmark measures how many searches per second a bulk import writes on a device, from UTF-8 text with
+ * one term per line, and checks it against {@link #TARGET_ROWS_PER_SECOND}. The rate and the longest gap between
+ * progress callbacks, which bounds how long a chunk keeps the database locked, are logged under {@link #TAG}.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class SearchImportBenchmark {
+    private static final String TAG = "SearchImport";
+    private static final int SEARCHES = 100000;
+    private static final int TARGET_ROWS_PER_SECOND = 10000;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        SearchDatabase.setMaxSearchesPersisted(0);
+        SearchDeviceTestHelper.open();
+    }
+
+    @After
+    public void tearDown() {
+        SearchDeviceTestHelper.close();
+    }
+
+    @Test
+    public void importMeetsTargetRate() throws InterruptedException, UnsupportedEncodingException {
+        StringBuilder text = new StringBuilder(SEARCHES * 16);
+        for (int i = 0; i < SEARCHES; i++) {
+            text.append("catalogue item ").append(i).append('\n');
+        }
+        final ByteArrayInputStream input = new ByteArrayInputStream(text.toString().getBytes("UTF-8"));
+        final CountDownLatch done = new CountDownLatch(1);
+        final int[] imported = new int[1];
+        final long[] longestChunk = new long[1];
+        final long[] lastProgress = new long[1];
+        final SearchDatabase.DatabaseImportListener listener = new SearchDatabase.DatabaseImportListener() {
+            @Override
+            public void onImportProgress(int searchesImported) {
+                long now = System.nanoTime();
+                longestChunk[0] = Math.max(longestChunk[0], now - lastProgress[0]);
+                lastProgress[0] = now;
+            }
+
+            @Override
+            public void onImportComplete(int searchesImported) {
+                imported[0] = searchesImported;
+                done.countDown();
+            }
+
+            @Override
+            public void onImportFailure(int searchesImported) {
+                imported[0] = -1;
+                done.countDown();
+            }
+        };
+        final long start = System.nanoTime();
+        InstrumentationRegistry.getInstrumentation().runOnMainSync(new Runnable() {
+            @Override
+            public void run() {
+                lastProgress[0] = start;
+                SearchDatabase.importSearches(InstrumentationRegistry.getTargetContext(), SearchTermSource.of(input),
+                        listener);
+            }
+        });
+        assertTrue(done.await(5, TimeUnit.MINUTES));
+        long elapsed = System.nanoTime() - start;
+        assertEquals(SEARCHES, imported[0]);
+
+        double rowsPerSecond = SEARCHES / (elapsed / 1e9);
+        Log.i(TAG, String.format(Locale.US, "%d searches in %.0f ms: %.0f rows/s, longest chunk %.1f ms", SEARCHES,
+                elapsed / 1e6, rowsPerSecond, longestChunk[0] / 1e6));
+        assertTrue(String.format(Locale.US, "%.0f rows/s", rowsPerSecond), rowsPerSecond >= TARGET_ROWS_PER_SECOND);
+    }
+}
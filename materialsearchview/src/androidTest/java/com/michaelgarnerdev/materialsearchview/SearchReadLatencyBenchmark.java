@@ -0,0 +1,173 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchReadLatencyBenchmark measures how long keystroke reads take while another thread keeps committing large
+ * batches of searches, once with the default rollback journal and once in write-ahead logging mode. It runs on a
+ * device, as the read connection pool is part of the platform's SQLite wrapper. The percentiles are logged under
+ * {@link #TAG}.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class SearchReadLatencyBenchmark {
+    private static final String TAG = "SearchReadLatency";
+    private static final int SEEDED_SEARCHES = 20000;
+    private static final int WRITE_BATCH_SIZE = 5000;
+    private static final int READS = 2000;
+    private static final int LIMIT = 5;
+
+    private final Random mRandom = new Random(42);
+    private long mDate = 0;
+
+    @Before
+    public void setUp() throws InterruptedException {
+        SearchDatabase.setWriteAheadLogging(true);
+        SearchDeviceTestHelper.open();
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabase.setWriteAheadLogging(false);
+        SearchDeviceTestHelper.close();
+    }
+
+    @Test
+    public void writeAheadLoggingKeepsReadsFromWaitingOnWrites() throws InterruptedException {
+        SQLiteDatabase database = SearchDatabase.readDatabase();
+        assertNotNull(database);
+        // an earlier test may have opened the database without write-ahead logging
+        if (!database.isWriteAheadLoggingEnabled()) {
+            database.enableWriteAheadLogging();
+        }
+        writeBatch(database, SEEDED_SEARCHES);
+
+        database.disableWriteAheadLogging();
+        long[] rollback = readWhileWriting(database);
+        database.enableWriteAheadLogging();
+        long[] writeAhead = readWhileWriting(database);
+
+        log("rollback journal", rollback);
+        log("write-ahead log", writeAhead);
+        assertTrue("p99 " + percentile(writeAhead, 99) + " ms with write-ahead logging, "
+                        + percentile(rollback, 99) + " ms without",
+                percentile(writeAhead, 99) < percentile(rollback, 99));
+    }
+
+    /**
+     * @return The duration of each read in nanoseconds, sorted.
+     */
+    @NonNull
+    private long[] readWhileWriting(@NonNull final SQLiteDatabase database) throws InterruptedException {
+        final AtomicBoolean writing = new AtomicBoolean(true);
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (writing.get()) {
+                    writeBatch(database, WRITE_BATCH_SIZE);
+                }
+            }
+        }, TAG + " writer");
+        writer.start();
+        long[] durations = new long[READS];
+        try {
+            String query = SearchDatabase.getStartsWithQuery(true, MaterialSearchView.RANKING_MODE_RECENT);
+            for (int i = 0; i < READS; i++) {
+                String key = randomKey(2);
+                String[] arguments = {key, SearchDatabase.getPrefixUpperBound(key), String.valueOf(LIMIT)};
+                long start = System.nanoTime();
+                Cursor cursor = database.rawQuery(query, arguments);
+                try {
+                    while (cursor.moveToNext()) {
+                        cursor.getString(1);
+                    }
+                } finally {
+                    cursor.close();
+                }
+                durations[i] = System.nanoTime() - start;
+            }
+        } finally {
+            writing.set(false);
+            writer.join();
+        }
+        Arrays.sort(durations);
+        return durations;
+    }
+
+    /**
+     * Commits a batch of new searches in one transaction, the way a large flush or import does.
+     */
+    private void writeBatch(@NonNull SQLiteDatabase database, int size) {
+        SQLiteStatement insert = database.compileStatement("INSERT OR IGNORE INTO searches"
+                + " (search_term, date_searched, search_key, search_count, frecency) VALUES (?, ?, ?, 1, ?)");
+        database.beginTransactionNonExclusive();
+        try {
+            for (int i = 0; i < size; i++) {
+                String key = randomKey(8);
+                long date = ++mDate;
+                insert.bindString(1, key);
+                insert.bindLong(2, date);
+                insert.bindString(3, key);
+                insert.bindDouble(4, date);
+                insert.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            insert.close();
+        }
+    }
+
+    @NonNull
+    private String randomKey(int length) {
+        char[] key = new char[length];
+        synchronized (mRandom) {
+            for (int i = 0; i < length; i++) {
+                key[i] = (char) ('a' + mRandom.nextInt(26));
+            }
+        }
+        return new String(key);
+    }
+
+    private static double percentile(@NonNull long[] sortedDurations, int percentile) {
+        int position = Math.min(sortedDurations.length - 1, sortedDurations.length * percentile / 100);
+        return sortedDurations[position] / 1e6;
+    }
+
+    private static void log(@NonNull String mode, @NonNull long[] sortedDurations) {
+        Log.i(TAG, mode + ": p50 " + percentile(sortedDurations, 50) + " ms, p90 " + percentile(sortedDurations, 90)
+                + " ms, p99 " + percentile(sortedDurations, 99) + " ms, max "
+                + percentile(sortedDurations, 100) + " ms over " + sortedDurations.length + " reads");
+    }
+}
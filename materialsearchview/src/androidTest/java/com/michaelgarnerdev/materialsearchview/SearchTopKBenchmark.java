@@ -0,0 +1,102 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.test.runner.AndroidJUnit4;
+import android.util.Log;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * SearchTopKBenchmark ranks random candidates on a device with {@link SearchTopK} and with a full sort truncated to
+ * the same number of slots, and logs both timings under {@link #TAG}. That both keep the same candidates is checked by
+ * SearchTopKTest.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(AndroidJUnit4.class)
+public class SearchTopKBenchmark {
+    private static final String TAG = "SearchTopK";
+    private static final int[] CANDIDATES = {10000, 100000, 500000};
+    private static final int[] SLOTS = {5, 20};
+    private static final int TIERS = 3;
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 5;
+
+    @Test
+    public void heapAgainstSort() {
+        for (int candidates : CANDIDATES) {
+            Random random = new Random(candidates);
+            final int[] tiers = new int[candidates];
+            final double[] scores = new double[candidates];
+            for (int i = 0; i < candidates; i++) {
+                tiers[i] = random.nextInt(TIERS);
+                // dates in whole days, so that many scores tie
+                scores[i] = random.nextInt(candidates / 10);
+            }
+            Comparator<Integer> bestFirst = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    if (tiers[first] != tiers[second]) {
+                        return tiers[first] < tiers[second] ? -1 : 1;
+                    }
+                    return Double.compare(scores[second], scores[first]);
+                }
+            };
+            for (int slots : SLOTS) {
+                for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                    rankWithHeap(tiers, scores, slots);
+                    sortAndTruncate(candidates, slots, bestFirst);
+                }
+                long heapNanos = Long.MAX_VALUE;
+                long sortNanos = Long.MAX_VALUE;
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    rankWithHeap(tiers, scores, slots);
+                    heapNanos = Math.min(heapNanos, System.nanoTime() - start);
+                    start = System.nanoTime();
+                    sortAndTruncate(candidates, slots, bestFirst);
+                    sortNanos = Math.min(sortNanos, System.nanoTime() - start);
+                }
+                Log.i(TAG, String.format(Locale.US, "n=%d K=%d: heap %.2f ms, sort %.2f ms", candidates, slots,
+                        heapNanos / 1e6, sortNanos / 1e6));
+            }
+        }
+    }
+
+    private static List<Integer> rankWithHeap(int[] tiers, double[] scores, int slots) {
+        SearchTopK<Integer> best = new SearchTopK<>(slots);
+        for (int i = 0; i < tiers.length; i++) {
+            best.offer(i, tiers[i], scores[i]);
+        }
+        return best.toBestFirst();
+    }
+
+    private static List<Integer> sortAndTruncate(int candidates, int slots, Comparator<Integer> bestFirst) {
+        Integer[] sorted = new Integer[candidates];
+        for (int i = 0; i < candidates; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, bestFirst);
+        return new ArrayList<>(Arrays.asList(sorted).subList(0, Math.min(slots, candidates)));
+    }
+}
@@ -48,16 +48,26 @@ import android.widget.LinearLayout;
 import android.widget.TextView;
 import android.widget.TextView.OnEditorActionListener;
 
+import com.michaelgarnerdev.materialsearchview.SearchDatabase.DatabaseImportListener;
+import com.michaelgarnerdev.materialsearchview.SearchDatabase.DatabaseReadSearchPagesListener;
 import com.michaelgarnerdev.materialsearchview.SearchDatabase.DatabaseReadSearchesListener;
 import com.michaelgarnerdev.materialsearchview.SearchDatabase.DatabaseTaskListener;
 import com.michaelgarnerdev.materialsearchview.SearchDatabase.GetPerformedSearchesStartingWithTask;
 import com.michaelgarnerdev.materialsearchview.SearchDatabase.GetPerformedSearchesTask;
 import com.michaelgarnerdev.materialsearchview.SearchDatabase.GetRecentSearchesTask;
+import com.michaelgarnerdev.materialsearchview.SearchDatabase.ImportSearchesTask;
+import com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchPageReader;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.lang.annotation.Retention;
 import java.lang.ref.WeakReference;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Locale;
+import java.util.concurrent.Executor;
 
 import static com.michaelgarnerdev.materialsearchview.MaterialSearchView.SearchViewVoiceListener.VOICE_SEARCH_ERROR_MISSING_CONTEXT;
 import static com.michaelgarnerdev.materialsearchview.MaterialSearchView.SearchViewVoiceListener.VOICE_SEARCH_ERROR_NO_RESULTS;
@@ -96,6 +106,8 @@ public class MaterialSearchView extends LinearLayout implements
     private static final boolean DEFAULT_DATABASE_SUGGESTIONS_ENABLED = true;
     private static final int DEFAULT_MAX_SUGGESTIONS_SHOWN = 5;
     private static final int DEFAULT_MAX_SUGGESTIONS_PERSISTED = 1000;
+    private static final int DEFAULT_MATCH_MODE = MaterialSearchView.MATCH_MODE_PREFIX;
+    private static final int DEFAULT_RANKING_MODE = MaterialSearchView.RANKING_MODE_RECENT;
     private static final boolean DEFAULT_VOICE_FEATURES_ENABLED = VERSION.SDK_INT < VERSION_CODES.M;
     private static final long CLEAR_TEXT_DELAY_TIME = 100;
 
@@ -115,6 +127,10 @@ public class MaterialSearchView extends LinearLayout implements
 
     private GetPerformedSearchesStartingWithTask mFilterSearchTask;
     private GetRecentSearchesTask mRecentSearchesTask;
+    private int mSuggestionsGeneration = 0;
+    private final SearchResultCache mResultCache = new SearchResultCache();
+    private SearchDictionary mDictionary;
+    private boolean mHoldsDatabase = false;
     private Runnable mFilterRunnable;
     private Runnable mClearTextRunnable;
     private RecyclerView mSuggestionsRecyclerView;
@@ -131,6 +147,10 @@ public class MaterialSearchView extends LinearLayout implements
     private int mMaxSuggestionsPersisted = DEFAULT_MAX_SUGGESTIONS_PERSISTED;
     private int mMaxSuggestionsShown = DEFAULT_MAX_SUGGESTIONS_SHOWN;
     private boolean mDatabaseSuggestionsEnabled = DEFAULT_DATABASE_SUGGESTIONS_ENABLED;
+    @MatchMode
+    private int mMatchMode = DEFAULT_MATCH_MODE;
+    @RankingMode
+    private int mRankingMode = DEFAULT_RANKING_MODE;
     private boolean mVoiceFeaturesEnabled = DEFAULT_VOICE_FEATURES_ENABLED;
     private String mHintText = null;
     private String mText = null;
@@ -209,6 +229,16 @@ public class MaterialSearchView extends LinearLayout implements
                         R.styleable.MaterialSearchView_voiceFeaturesEnabled,
                         DEFAULT_VOICE_FEATURES_ENABLED
                 );
+                //noinspection WrongConstant
+                mMatchMode = typedArray.getInt(
+                        R.styleable.MaterialSearchView_matchMode,
+                        DEFAULT_MATCH_MODE
+                );
+                //noinspection WrongConstant
+                mRankingMode = typedArray.getInt(
+                        R.styleable.MaterialSearchView_rankingMode,
+                        DEFAULT_RANKING_MODE
+                );
                 mMainIcon = typedArray.getDrawable(R.styleable.MaterialSearchView_mainIcon);
                 mVoiceIcon = typedArray.getDrawable(R.styleable.MaterialSearchView_voiceIcon);
                 mClearIcon = typedArray.getDrawable(R.styleable.MaterialSearchView_clearIcon);
@@ -487,34 +517,58 @@ public class MaterialSearchView extends LinearLayout implements
             mSuggestionsRecyclerView.setVisibility(enabled ? View.VISIBLE : View.GONE);
         }
         if (enabled) {
-            SearchDatabase.destroy();
-            if (mContext != null) {
-                Context context = mContext.get();
-                if (context != null) {
-                    SearchDatabase.init(context);
-                }
-            }
+            acquireDatabase();
         } else {
             cancelSuggestions();
             if (mSuggestionsAdapter != null) {
                 mSuggestionsAdapter.setSuggestions(new ArrayList<SearchSuggestion>());
                 mSuggestionsAdapter.notifyDataSetChanged();
             }
-            SearchDatabase.deleteDatabase(null);
-            SearchDatabase.destroy();
+            SearchDatabase.deleteDatabase(getContext(), null);
+            releaseDatabase();
         }
         mDatabaseSuggestionsEnabled = enabled;
     }
 
     /**
-     * Sets the maximum number of suggestions that should be shown at any given time.
+     * Sets the maximum number of suggestions that should be persisted. The least recently searched suggestions are
+     * removed once the limit is exceeded.
      *
      * @param limit
-     *         The maximum number or limit of suggestions.
+     *         The maximum number or limit of suggestions. Default is 1000.
      */
     @SuppressWarnings("unused")
     public void setMaximumSuggestions(int limit) {
         mMaxSuggestionsPersisted = limit;
+        SearchDatabase.setMaxSearchesPersisted(limit);
+    }
+
+    /**
+     * Sets the executors that the suggestions database runs on, for every MaterialSearchView in the process. By default
+     * the database uses its own background threads, separate from AsyncTask's shared queue.
+     *
+     * @param writeExecutor
+     *         The executor that saves and deletes searches, or null for the default. Writes run one at a time even if
+     *         the executor has several threads.
+     * @param readExecutor
+     *         The executor that loads suggestions, or null for the default.
+     */
+    @SuppressWarnings("unused")
+    public static void setDatabaseExecutors(@Nullable Executor writeExecutor, @Nullable Executor readExecutor) {
+        SearchDatabase.setExecutors(writeExecutor, readExecutor);
+    }
+
+    /**
+     * Sets whether the suggestions database uses write-ahead logging, for every MaterialSearchView in the process. With
+     * it enabled, suggestions keep loading while searches are being saved, at the cost of a little more disk space.
+     * Must be called before the view is attached to take effect. Default is disabled.
+     *
+     * @param enabled
+     *         True to enable write-ahead logging.
+     */
+    @SuppressWarnings("unused")
+    public static void setDatabaseWriteAheadLoggingEnabled(boolean enabled) {
+        SearchDatabase.setWriteAheadLogging(enabled);
     }
 
     /**
@@ -623,13 +677,7 @@ public class MaterialSearchView extends LinearLayout implements
      */
     @SuppressWarnings("unused")
     public void clearSearchHistory() {
-        SearchDatabase.deleteDatabase(null);
-        if (mContext != null) {
-            Context context = mContext.get();
-            if (context != null) {
-                SearchDatabase.init(context);
-            }
-        }
+        SearchDatabase.deleteDatabase(getContext(), null);
         clearSuggestions();
     }
 
@@ -641,13 +689,7 @@ public class MaterialSearchView extends LinearLayout implements
      */
     @SuppressWarnings("unused")
     public void clearSearchHistory(@Nullable DatabaseTaskListener listener) {
-        SearchDatabase.deleteDatabase(listener);
-        if (mContext != null) {
-            Context context = mContext.get();
-            if (context != null) {
-                SearchDatabase.init(context);
-            }
-        }
+        SearchDatabase.deleteDatabase(getContext(), listener);
     }
 
     /**
@@ -661,6 +703,106 @@ public class MaterialSearchView extends LinearLayout implements
         mMaxSuggestionsShown = limit;
     }
 
+    /**
+     * Sets how the text typed by the user is matched against previous searches.
+     *
+     * @param matchMode
+     *         {@link #MATCH_MODE_PREFIX} to match searches starting with the text,
+     *         {@link #MATCH_MODE_TOKEN_PREFIX} to match the text starting at any word of a search,
+     *         {@link #MATCH_MODE_FULL_TEXT} to match searches containing every typed word in any order, or
+     *         {@link #MATCH_MODE_FUZZY} to match searches starting with the text give or take one typo, or two once
+     *         six characters are typed. Exact matches come first.
+     *         Default is {@link #MATCH_MODE_PREFIX}.
+     */
+    @SuppressWarnings("unused")
+    public void setMatchMode(@MatchMode int matchMode) {
+        mMatchMode = matchMode;
+    }
+
+    /**
+     * Get how the text typed by the user is matched against previous searches.
+     *
+     * @return The match mode.
+     */
+    @SuppressWarnings("unused")
+    @MatchMode
+    public int getMatchMode() {
+        return mMatchMode;
+    }
+
+    /**
+     * Sets how suggestions are ordered.
+     *
+     * @param rankingMode
+     *         {@link #RANKING_MODE_RECENT} to show the most recently performed searches first, or
+     *         {@link #RANKING_MODE_FRECENCY} to favor searches that are performed often, with older searches counting
+     *         for less. Default is {@link #RANKING_MODE_RECENT}.
+     */
+    @SuppressWarnings("unused")
+    public void setRankingMode(@RankingMode int rankingMode) {
+        mRankingMode = rankingMode;
+    }
+
+    /**
+     * Get how suggestions are ordered.
+     *
+     * @return The ranking mode.
+     */
+    @SuppressWarnings("unused")
+    @RankingMode
+    public int getRankingMode() {
+        return mRankingMode;
+    }
+
+    /**
+     * Get how often suggestions for typed text were worked out from an earlier result instead of querying the
+     * database.
+     *
+     * @return The share of cached suggestion lookups, from 0 to 1.
+     */
+    @SuppressWarnings("unused")
+    public float getSuggestionCacheHitRate() {
+        return mResultCache.getHitRate();
+    }
+
+    /**
+     * Sets a dictionary of popular searches whose matches are suggested beneath the user's own searches while typing.
+     * The dictionary is matched by prefix whatever the match mode. See the README for its format.
+     *
+     * @param assetName
+     *         The name of the dictionary in the app's assets. It must be stored uncompressed so it can be mapped.
+     *
+     * @throws IOException
+     *         If the dictionary cannot be opened.
+     */
+    @SuppressWarnings("unused")
+    public void setSuggestionDictionary(@NonNull String assetName) throws IOException {
+        mDictionary = SearchDictionary.open(getContext().getAssets(), assetName);
+    }
+
+    /**
+     * Sets a dictionary of popular searches whose matches are suggested beneath the user's own searches while typing.
+     *
+     * @param file
+     *         The dictionary file.
+     *
+     * @throws IOException
+     *         If the dictionary cannot be opened.
+     * @see #setSuggestionDictionary(String)
+     */
+    @SuppressWarnings("unused")
+    public void setSuggestionDictionary(@NonNull File file) throws IOException {
+        mDictionary = SearchDictionary.open(file);
+    }
+
+    /**
+     * Stops suggesting searches from a dictionary.
+     */
+    @SuppressWarnings("unused")
+    public void clearSuggestionDictionary() {
+        mDictionary = null;
+    }
+
     /**
      * Set the voice feature to be enabled or disabled.
      *
@@ -977,7 +1119,7 @@ public class MaterialSearchView extends LinearLayout implements
         if (mDatabaseSuggestionsEnabled) {
             ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>(suggestions.length);
             for (int i = 0; i < suggestions.length; i++) {
-                String currentTime = String.valueOf(System.currentTimeMillis() - 1000 * i);
+                long currentTime = System.currentTimeMillis() - 1000 * i;
                 searchSuggestions.add(new SearchSuggestion(suggestions[i].toString(), currentTime));
             }
             SearchDatabase.addPerformedSearches(searchSuggestions, null);
@@ -997,7 +1139,7 @@ public class MaterialSearchView extends LinearLayout implements
         if (mDatabaseSuggestionsEnabled) {
             ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>(suggestions.length);
             for (int i = 0; i < suggestions.length; i++) {
-                String currentTime = String.valueOf(System.currentTimeMillis() - 1000 * i);
+                long currentTime = System.currentTimeMillis() - 1000 * i;
                 searchSuggestions.add(new SearchSuggestion(suggestions[i].toString(), currentTime));
             }
             SearchDatabase.addPerformedSearches(searchSuggestions, listener);
@@ -1016,7 +1158,7 @@ public class MaterialSearchView extends LinearLayout implements
         if (suggestions != null) {
             searchSuggestions = new ArrayList<>(suggestions.length);
             for (int i = 0; i < suggestions.length; i++) {
-                String currentTime = String.valueOf(System.currentTimeMillis() - 1000 * i);
+                long currentTime = System.currentTimeMillis() - 1000 * i;
                 searchSuggestions.add(new SearchSuggestion(suggestions[i].toString(), currentTime));
             }
         }
@@ -1054,6 +1196,75 @@ public class MaterialSearchView extends LinearLayout implements
         }
     }
 
+    /**
+     * Imports a large number of searches for future use, such as a catalogue to seed suggestions with. Unlike
+     * {@link #persistSuggestions(CharSequence[])} the searches are read one at a time and written in short
+     * transactions, so the import needs little memory and suggestions can still be read while it runs. Terms earlier
+     * in the source rank as more recent, but every imported term ranks below the searches already performed, so they
+     * are evicted first when the history is trimmed. Raise {@link #setMaximumSuggestions(int)} first, as the history is
+     * trimmed to it afterwards. The import keeps the database open until it is done, so it can be started before the
+     * view is attached.
+     *
+     * @param terms
+     *         The terms to import. The iterator is read on a background thread.
+     * @param listener
+     *         A listener for the progress and completion of the import.
+     *
+     * @return The task so that it can be canceled if necessary, or null if the database is disabled.
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public ImportSearchesTask importSearches(@NonNull Iterator<? extends CharSequence> terms,
+                                             @Nullable DatabaseImportListener listener) {
+        return importSearches(SearchTermSource.of(terms), listener);
+    }
+
+    /**
+     * Imports a large number of searches for future use, one per line of UTF-8 text.
+     *
+     * @param input
+     *         The text to import. It is read on a background thread and closed once the import is done.
+     * @param listener
+     *         A listener for the progress and completion of the import.
+     *
+     * @return The task so that it can be canceled if necessary, or null if the database is disabled.
+     *
+     * @see #importSearches(Iterator, DatabaseImportListener)
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public ImportSearchesTask importSearches(@NonNull InputStream input, @Nullable DatabaseImportListener listener) {
+        return importSearches(SearchTermSource.of(input), listener);
+    }
+
+    /**
+     * Imports a large number of searches for future use, one per line of a UTF-8 text file.
+     *
+     * @param file
+     *         The file to import.
+     * @param listener
+     *         A listener for the progress and completion of the import.
+     *
+     * @return The task so that it can be canceled if necessary, or null if the database is disabled.
+     *
+     * @see #importSearches(Iterator, DatabaseImportListener)
+     */
+    @SuppressWarnings("unused")
+    @Nullable
+    public ImportSearchesTask importSearches(@NonNull File file, @Nullable DatabaseImportListener listener) {
+        return importSearches(SearchTermSource.of(file), listener);
+    }
+
+    @Nullable
+    private ImportSearchesTask importSearches(@NonNull SearchTermSource source,
+                                              @Nullable DatabaseImportListener listener) {
+        if (mDatabaseSuggestionsEnabled) {
+            return SearchDatabase.importSearches(getContext(), source, listener);
+        }
+        source.close();
+        return null;
+    }
+
     /**
      * Set suggestions for the user to search for.
      *
@@ -1069,7 +1280,8 @@ public class MaterialSearchView extends LinearLayout implements
 
     /**
      * Get the suggested and historical searches performed on this device.
-     * The response of this call can have a large ArrayList depending on maximum searches allowed.
+     * The response of this call can have a large ArrayList depending on maximum searches allowed. Use
+     * {@link #getSuggestedSearchPages(int, DatabaseReadSearchPagesListener)} to read a long history.
      *
      * @param listener
      *         The listener for the completion of the lookup.
@@ -1097,6 +1309,23 @@ public class MaterialSearchView extends LinearLayout implements
         return SearchDatabase.getPerformedSearches(limit, listener);
     }
 
+    /**
+     * Get the suggested and historical searches performed on this device one page at a time, newest first. The next
+     * page is only read once the listener asks for it, so memory use is bounded by the page size. The listener is told
+     * {@link DatabaseReadSearchPagesListener#onFailure()} instead of completion if the history could not be read.
+     *
+     * @param pageSize
+     *         The maximum number of searches in each page.
+     * @param listener
+     *         The listener for each page and the completion of the lookup.
+     *
+     * @return The reader so that it can be canceled if necessary.
+     */
+    @SuppressWarnings("unused")
+    public SearchPageReader getSuggestedSearchPages(int pageSize, @NonNull DatabaseReadSearchPagesListener listener) {
+        return SearchDatabase.readSearchPages(getContext(), pageSize, listener);
+    }
+
     /**
      * Add SearchViewSearchListener.
      *
@@ -1357,7 +1586,7 @@ public class MaterialSearchView extends LinearLayout implements
         if (!TextUtils.isEmpty(searchTerm)) {
             setSearchText(searchTerm);
             if (mDatabaseSuggestionsEnabled) {
-                SearchDatabase.addPerformedSearch(null, new SearchSuggestion(searchTerm, String.valueOf(System.currentTimeMillis())));
+                SearchDatabase.addPerformedSearch(null, new SearchSuggestion(searchTerm, System.currentTimeMillis()));
             }
             if (mSearchListeners != null) {
                 for (SearchViewSearchListener listener : mSearchListeners) {
@@ -1434,6 +1663,7 @@ public class MaterialSearchView extends LinearLayout implements
         if (mFilterSearchTask != null) {
             mFilterSearchTask.cancel();
         }
+        mSuggestionsGeneration++;
     }
 
     private void adjustSuggestionsBoxHeight(int numberOfRows) {
@@ -1474,14 +1704,19 @@ public class MaterialSearchView extends LinearLayout implements
     private void showRecentSearches() {
         if (mDatabaseSuggestionsEnabled) {
             int limit = Math.min(mMaxSuggestionsShown, mMaxSuggestionsPersisted);
-            mRecentSearchesTask = SearchDatabase.getRecentSearches(limit, MaterialSearchView.this);
+            if (mRecentSearchesTask != null) {
+                mRecentSearchesTask.cancel();
+            }
+            mRecentSearchesTask = SearchDatabase.getRecentSearches(limit, mRankingMode,
+                    new SuggestionsListener(++mSuggestionsGeneration));
         }
     }
 
     private void filterSearchSuggestions(@NonNull String searchTerm) {
         if (mDatabaseSuggestionsEnabled) {
             int limit = Math.min(mMaxSuggestionsShown, mMaxSuggestionsPersisted);
-            mFilterSearchTask = SearchDatabase.filterSearchesBy(limit, searchTerm, MaterialSearchView.this);
+            mFilterSearchTask = SearchDatabase.filterSearchesBy(limit, searchTerm, mMatchMode, mRankingMode,
+                    mResultCache, new SuggestionsListener(++mSuggestionsGeneration, SearchIndex.toKey(searchTerm)));
         }
     }
 
@@ -1660,15 +1895,31 @@ public class MaterialSearchView extends LinearLayout implements
         Log.d(TAG, ".onAttachedToWindow()");
         restoreContextIfNeeded();
         if (mDatabaseSuggestionsEnabled) {
-            if (mContext != null) {
-                Context context = mContext.get();
-                if (context != null) {
-                    SearchDatabase.init(context);
-                }
+            acquireDatabase();
+            SearchDatabase.setMaxSearchesPersisted(mMaxSuggestionsPersisted);
+        }
+    }
+
+    /**
+     * Takes this view's reference to the shared database, if it does not hold it already.
+     */
+    private void acquireDatabase() {
+        if (!mHoldsDatabase && mContext != null) {
+            Context context = mContext.get();
+            if (context != null) {
+                SearchDatabase.acquire(context);
+                mHoldsDatabase = true;
             }
         }
     }
 
+    private void releaseDatabase() {
+        if (mHoldsDatabase) {
+            SearchDatabase.release();
+            mHoldsDatabase = false;
+        }
+    }
+
     private void restoreContextIfNeeded() {
         if ((mContext == null || mContext.get() == null) && mSearchCard != null) {
             mContext = new WeakReference<>(mSearchCard.getContext());
@@ -1686,7 +1937,7 @@ public class MaterialSearchView extends LinearLayout implements
         }
         cancelSuggestions();
         destroyListeners();
-        SearchDatabase.destroy();
+        releaseDatabase();
     }
 
     @Override
@@ -1811,6 +2062,64 @@ public class MaterialSearchView extends LinearLayout implements
         }
     }
 
+    /**
+     * Tags a suggestions request with a generation number. Results are only shown if no newer request was made since,
+     * so a slow query can never overwrite the suggestions of a later one.
+     */
+    private class SuggestionsListener implements DatabaseReadSearchesListener {
+        private final int mGeneration;
+        private final String mKey;
+
+        private SuggestionsListener(int generation) {
+            this(generation, null);
+        }
+
+        /**
+         * @param key
+         *         The folded typed text, to complete the suggestions from the dictionary with.
+         */
+        private SuggestionsListener(int generation, @Nullable String key) {
+            mGeneration = generation;
+            mKey = key;
+        }
+
+        @Override
+        public void onComplete(@NonNull ArrayList<SearchSuggestion> searches) {
+            if (mGeneration == mSuggestionsGeneration) {
+                MaterialSearchView.this.onComplete(addDictionarySuggestions(searches));
+            }
+        }
+
+        @NonNull
+        private ArrayList<SearchSuggestion> addDictionarySuggestions(@NonNull ArrayList<SearchSuggestion> searches) {
+            SearchDictionary dictionary = mDictionary;
+            if (mKey == null || mKey.isEmpty() || dictionary == null || searches.size() >= mMaxSuggestionsShown) {
+                return searches;
+            }
+            ArrayList<String> terms = new ArrayList<>(mMaxSuggestionsShown);
+            dictionary.startingWith(mKey, mMaxSuggestionsShown, terms);
+            if (terms.isEmpty()) {
+                return searches;
+            }
+            ArrayList<SearchSuggestion> suggestions = new ArrayList<>(searches);
+            HashSet<String> shown = new HashSet<>();
+            // dictionary suggestions are dated just before the user's oldest one shown, a millisecond apart, so that
+            // sorting by date keeps them beneath the user's searches and in the order of their weights
+            long date = System.currentTimeMillis();
+            for (SearchSuggestion search : searches) {
+                shown.add(search.getSearchKey());
+                date = Math.min(date, search.getDateMillis());
+            }
+            for (int i = 0; i < terms.size() && suggestions.size() < mMaxSuggestionsShown; i++) {
+                SearchSuggestion suggestion = new SearchSuggestion(terms.get(i), --date);
+                if (shown.add(suggestion.getSearchKey())) {
+                    suggestions.add(suggestion);
+                }
+            }
+            return suggestions;
+        }
+    }
+
     private class SuggestionsAdapter extends RecyclerView.Adapter<SuggestionViewHolder> {
 
         @NonNull
@@ -1943,6 +2252,26 @@ public class MaterialSearchView extends LinearLayout implements
     public static final int STATE_UNFOCUSED_TEXT_PRESENT = 4;
     public static final int STATE_VOICE_LISTENING = 5;
 
+    @Retention(SOURCE)
+    @IntDef({MATCH_MODE_PREFIX,
+            MATCH_MODE_TOKEN_PREFIX,
+            MATCH_MODE_FULL_TEXT,
+            MATCH_MODE_FUZZY})
+    public @interface MatchMode {}
+
+    public static final int MATCH_MODE_PREFIX = 0;
+    public static final int MATCH_MODE_TOKEN_PREFIX = 1;
+    public static final int MATCH_MODE_FULL_TEXT = 2;
+    public static final int MATCH_MODE_FUZZY = 3;
+
+    @Retention(SOURCE)
+    @IntDef({RANKING_MODE_RECENT,
+            RANKING_MODE_FRECENCY})
+    public @interface RankingMode {}
+
+    public static final int RANKING_MODE_RECENT = 0;
+    public static final int RANKING_MODE_FRECENCY = 1;
+
     @SuppressWarnings({"unused", "WeakerAccess"})
     public interface SearchViewInteractionListener extends SearchViewSearchListener {
         void onVoiceButtonClick();
@@ -1,22 +1,43 @@
 package com.michaelgarnerdev.materialsearchview;
 
+import android.content.ComponentCallbacks2;
 import android.content.Context;
+import android.content.res.Configuration;
 import android.database.Cursor;
-import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
+import android.text.TextUtils;
 
+import com.michaelgarnerdev.materialsearchview.SearchWriteBuffer.PendingSearch;
+
+import java.io.IOException;
 import java.lang.annotation.Retention;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
-
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_FRECENCY;
 import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_ID;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_SEARCH_COUNT;
 import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_SEARCH_DATE;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_SEARCH_KEY;
 import static com.michaelgarnerdev.materialsearchview.SearchDatabase.SearchEntry.COLUMN_NAME_SEARCH_TERM;
 import static java.lang.annotation.RetentionPolicy.SOURCE;
 
@@ -39,181 +60,1003 @@ import static java.lang.annotation.RetentionPolicy.SOURCE;
  */
 
 class SearchDatabase extends SQLiteOpenHelper {
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 7;
     private static final String DATABASE_NAME = "msv_searches.db";
     private static final String TEXT_TYPE = " TEXT";
     private static final String REAL_TYPE = " REAL";
+    private static final String INTEGER_TYPE = " INTEGER";
     private static final String COMMA_SEP = ", ";
     private static final String SEARCHES_TABLE_NAME = "searches";
+    private static final String SEARCHES_KEY_DATE_INDEX_NAME = "searches_key_date";
+    private static final String SEARCHES_DATE_INDEX_NAME = "searches_date";
+    private static final String SEARCHES_FRECENCY_INDEX_NAME = "searches_frecency";
+    private static final String SEARCHES_FTS_TABLE_NAME = "searches_fts";
+    private static final String COLUMN_NAME_FTS_DOC_ID = "docid";
 
     private static final int DEFAULT_LIMIT = 5;
-
-    private static SearchDatabase sInstance;
+    private static final float EVICTION_SLACK = 0.1f;
+    private static final int EVICTION_BATCH_SIZE = 500;
+    private static final int RECENT_SEARCHES_CAPACITY = 16;
+    private static final int READ_POOL_SIZE = 2;
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+    private static final long IDLE_CLOSE_DELAY = 30 * 1000;
+    private static final int WRITE_BUFFER_FLUSH_SIZE = 16;
+    private static final long WRITE_BUFFER_FLUSH_DELAY = 1000;
+    private static final int IMPORT_CHUNK_SIZE = 2000;
+    private static final int INDEX_LOAD_CHUNK_SIZE = 1024;
+    private static final long IMPORT_CHUNK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+
+    private static final Executor DEFAULT_WRITE_EXECUTOR = newThreadPool("MaterialSearchView write", 1);
+    private static final Executor DEFAULT_READ_EXECUTOR = newThreadPool("MaterialSearchView read", READ_POOL_SIZE);
+    private static volatile Executor sWriteExecutor = DEFAULT_WRITE_EXECUTOR;
+    private static volatile Executor sReadExecutor = DEFAULT_READ_EXECUTOR;
+
+    // guarded by the class lock, and volatile so they can be read without it
+    private static volatile SearchDatabase sInstance;
+    private static volatile SearchIndex sIndex;
+    // guarded by the class lock
+    private static int sReferenceCount = 0;
     private static SQLiteDatabase sWritableDatabase;
     private static SQLiteDatabase sReadableDatabase;
+    // only changed on the write executor
+    private static volatile SearchStatements sStatements;
+    private static long sEstimatedSearchCount = -1;
+
+    // bumped whenever the set of searches a read can return changes, so that cached results can be dropped
+    private static final AtomicInteger sDataVersion = new AtomicInteger();
+    // only used on the main thread
+    private static final SearchDeadPrefixes sDeadPrefixes = new SearchDeadPrefixes();
+
+    private static volatile int sMaxSearchesPersisted = 0;
+    private static volatile boolean sWriteAheadLoggingEnabled = false;
+
+    private static final SearchWriteBuffer sWriteBuffer = new SearchWriteBuffer();
+    // outlives the database instance, since every write goes through this class
+    private static final SearchRecentBuffer sRecentSearches = new SearchRecentBuffer(RECENT_SEARCHES_CAPACITY);
+    private static final Handler sHandler = new Handler(Looper.getMainLooper());
+    private static final Runnable sFlushRunnable = new Runnable() {
+        @Override
+        public void run() {
+            flushPendingSearches();
+        }
+    };
+    private static final Runnable sIdleCloseRunnable = new Runnable() {
+        @Override
+        public void run() {
+            closeIfIdle();
+        }
+    };
+    private static final ComponentCallbacks2 sBackgroundCallbacks = new ComponentCallbacks2() {
+        @Override
+        public void onTrimMemory(int level) {
+            if (level >= TRIM_MEMORY_UI_HIDDEN) {
+                flushPendingSearches();
+            }
+        }
+
+        @Override
+        public void onConfigurationChanged(Configuration newConfig) {
 
-    static synchronized void init(@NonNull Context context) {
+        }
+
+        @Override
+        public void onLowMemory() {
+
+        }
+    };
+
+    private final Context mContext;
+
+    /**
+     * Takes a reference to the database, which is shared by every MaterialSearchView, opening it if needed. The
+     * database and its in-memory index stay warm while any reference is held and for {@link #IDLE_CLOSE_DELAY}
+     * milliseconds after the last one is released, so views that come and go do not reopen it each time.
+     * <p>
+     * Every call must be balanced by a call to {@link #release()}.
+     */
+    static synchronized void acquire(@NonNull Context context) {
+        sReferenceCount++;
+        sHandler.removeCallbacks(sIdleCloseRunnable);
         if (sInstance == null) {
-            sInstance = new SearchDatabase(context.getApplicationContext());
+            SearchDatabase instance = new SearchDatabase(context.getApplicationContext());
+            instance.setWriteAheadLoggingEnabled(sWriteAheadLoggingEnabled);
+            instance.mContext.registerComponentCallbacks(sBackgroundCallbacks);
+            sIndex = new SearchIndex();
+            sInstance = instance;
+            new LoadSearchIndexTask(sIndex).executeOnExecutor(sReadExecutor);
+            if (!sWriteBuffer.isEmpty()) {
+                flushPendingSearches();
+            }
         }
     }
 
+    /**
+     * Releases a reference taken with {@link #acquire(Context)} and flushes the searches that are still buffered. Once
+     * no references are left the database is closed after {@link #IDLE_CLOSE_DELAY} milliseconds, unless it is
+     * acquired again before then.
+     */
+    static synchronized void release() {
+        if (sReferenceCount == 0) {
+            return;
+        }
+        sReferenceCount--;
+        flushPendingSearches();
+        if (sReferenceCount == 0) {
+            sHandler.postDelayed(sIdleCloseRunnable, IDLE_CLOSE_DELAY);
+        }
+    }
+
+    /**
+     * Sets whether the database is opened in write-ahead logging mode. In that mode SQLite keeps a pool of read
+     * connections next to the write connection, so suggestions can be read while a large batch of searches is being
+     * committed. Takes effect the next time the database is opened.
+     */
+    static void setWriteAheadLogging(boolean enabled) {
+        sWriteAheadLoggingEnabled = enabled;
+    }
+
+    /**
+     * Sets the executors that database tasks run on. Writes are always run one at a time, in order, even on an executor
+     * with several threads. Results are still delivered on the main thread.
+     *
+     * @param writeExecutor
+     *         The executor for writes, or null to use a dedicated background thread.
+     * @param readExecutor
+     *         The executor for reads, or null to use a dedicated pool of background threads.
+     */
+    static void setExecutors(@Nullable Executor writeExecutor, @Nullable Executor readExecutor) {
+        sWriteExecutor = writeExecutor != null ? new SerialExecutor(writeExecutor) : DEFAULT_WRITE_EXECUTOR;
+        sReadExecutor = readExecutor != null ? readExecutor : DEFAULT_READ_EXECUTOR;
+    }
+
+    @NonNull
+    private static Executor newThreadPool(@NonNull final String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(@NonNull Runnable runnable) {
+                return new Thread(runnable, name + " #" + mCount.getAndIncrement());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     private SearchDatabase(@NonNull Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        mContext = context;
     }
 
-    private static synchronized SearchDatabase get() {
-        if (sInstance != null) {
-            return sInstance;
-        } else {
-            throw new RuntimeException("Cannot call get if Database is not initialized.");
+    /**
+     * Flushes the searches that are still buffered and closes the database once they are written, unless it was
+     * acquired again.
+     */
+    private static synchronized void closeIfIdle() {
+        final SearchDatabase instance = sInstance;
+        if (instance == null || sReferenceCount > 0) {
+            return;
         }
-    }
-
-    static void destroy() {
+        flushPendingSearches();
+        instance.mContext.unregisterComponentCallbacks(sBackgroundCallbacks);
         sInstance = null;
-        if (sWritableDatabase != null) {
-            sWritableDatabase.close();
-            sWritableDatabase = null;
-        }
-        if (sReadableDatabase != null) {
-            sReadableDatabase.close();
-            sReadableDatabase = null;
-        }
+        sIndex = null;
+        sWritableDatabase = null;
+        sReadableDatabase = null;
+        // writes run in order, so this runs after the flush above
+        sWriteExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                // statements hold a reference to the database, so they have to be closed first
+                if (sStatements != null) {
+                    sStatements.close();
+                    sStatements = null;
+                }
+                instance.close();
+            }
+        });
     }
 
     @Retention(SOURCE)
-    @StringDef({COLUMN_NAME_ID, COLUMN_NAME_SEARCH_TERM, COLUMN_NAME_SEARCH_DATE})
+    @StringDef({COLUMN_NAME_ID, COLUMN_NAME_SEARCH_TERM, COLUMN_NAME_SEARCH_DATE, COLUMN_NAME_SEARCH_KEY,
+            COLUMN_NAME_SEARCH_COUNT, COLUMN_NAME_FRECENCY})
     @interface SearchEntry {
         String COLUMN_NAME_ID = "_id";
         String COLUMN_NAME_SEARCH_TERM = "search_term";
         String COLUMN_NAME_SEARCH_DATE = "date_searched";
+        String COLUMN_NAME_SEARCH_KEY = "search_key";
+        String COLUMN_NAME_SEARCH_COUNT = "search_count";
+        String COLUMN_NAME_FRECENCY = "frecency";
     }
 
-    private static String[] sSearchesTableAllColumns = {
+    private static String[] sSearchesTableIndexColumns = {
             COLUMN_NAME_ID,
             COLUMN_NAME_SEARCH_TERM,
-            COLUMN_NAME_SEARCH_DATE
+            COLUMN_NAME_SEARCH_DATE,
+            COLUMN_NAME_FRECENCY,
+            COLUMN_NAME_SEARCH_KEY
     };
 
     private static final String SQL_CREATE_SEARCHES_TABLE =
             "CREATE TABLE " + SEARCHES_TABLE_NAME + " (" +
                     COLUMN_NAME_ID + " INTEGER PRIMARY KEY," +
                     COLUMN_NAME_SEARCH_TERM + TEXT_TYPE + COMMA_SEP +
-                    COLUMN_NAME_SEARCH_DATE + REAL_TYPE + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_DATE + INTEGER_TYPE + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_KEY + TEXT_TYPE + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_COUNT + INTEGER_TYPE + " NOT NULL DEFAULT 1" + COMMA_SEP +
+                    COLUMN_NAME_FRECENCY + REAL_TYPE + COMMA_SEP +
                     " UNIQUE(" + COLUMN_NAME_SEARCH_TERM + ")" +
                     ")";
 
+    private static final String SQL_CREATE_SEARCHES_KEY_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + SEARCHES_KEY_DATE_INDEX_NAME + " ON " + SEARCHES_TABLE_NAME + " (" +
+                    COLUMN_NAME_SEARCH_KEY + COMMA_SEP + COLUMN_NAME_SEARCH_DATE +
+                    ")";
+
+    private static final String SQL_CREATE_SEARCHES_DATE_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + SEARCHES_DATE_INDEX_NAME + " ON " + SEARCHES_TABLE_NAME + " (" +
+                    COLUMN_NAME_SEARCH_DATE +
+                    ")";
+
+    private static final String SQL_CREATE_SEARCHES_FRECENCY_INDEX =
+            "CREATE INDEX IF NOT EXISTS " + SEARCHES_FRECENCY_INDEX_NAME + " ON " + SEARCHES_TABLE_NAME + " (" +
+                    COLUMN_NAME_FRECENCY +
+                    ")";
+
+    private static final String SQL_CREATE_SEARCHES_FTS_TABLE =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + SEARCHES_FTS_TABLE_NAME + " USING fts4(" +
+                    COLUMN_NAME_SEARCH_KEY +
+                    ")";
+
+    private static final String[] SQL_CREATE_SEARCHES_FTS_TRIGGERS = {
+            "CREATE TRIGGER IF NOT EXISTS searches_fts_insert AFTER INSERT ON " + SEARCHES_TABLE_NAME + " BEGIN " +
+                    "INSERT INTO " + SEARCHES_FTS_TABLE_NAME + " (" + COLUMN_NAME_FTS_DOC_ID + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_KEY + ") VALUES (new." + COLUMN_NAME_ID + COMMA_SEP +
+                    "new." + COLUMN_NAME_SEARCH_KEY + "); END",
+            "CREATE TRIGGER IF NOT EXISTS searches_fts_update AFTER UPDATE OF " + COLUMN_NAME_SEARCH_KEY +
+                    " ON " + SEARCHES_TABLE_NAME + " BEGIN " +
+                    "UPDATE " + SEARCHES_FTS_TABLE_NAME + " SET " + COLUMN_NAME_SEARCH_KEY + " = new." +
+                    COLUMN_NAME_SEARCH_KEY + " WHERE " + COLUMN_NAME_FTS_DOC_ID + " = old." + COLUMN_NAME_ID + "; END",
+            "CREATE TRIGGER IF NOT EXISTS searches_fts_delete AFTER DELETE ON " + SEARCHES_TABLE_NAME + " BEGIN " +
+                    "DELETE FROM " + SEARCHES_FTS_TABLE_NAME + " WHERE " + COLUMN_NAME_FTS_DOC_ID + " = old." +
+                    COLUMN_NAME_ID + "; END"
+    };
+
     private static final String SQL_DELETE_ENTRIES =
             "DROP TABLE IF EXISTS " + SEARCHES_TABLE_NAME;
 
+    private static final String SQL_DELETE_FTS_ENTRIES =
+            "DROP TABLE IF EXISTS " + SEARCHES_FTS_TABLE_NAME;
+
+    private static final String SQL_SELECT_SEARCHES =
+            "SELECT " + COLUMN_NAME_ID + COMMA_SEP + COLUMN_NAME_SEARCH_TERM + COMMA_SEP + COLUMN_NAME_SEARCH_DATE +
+                    COMMA_SEP + COLUMN_NAME_FRECENCY + COMMA_SEP + COLUMN_NAME_SEARCH_KEY + " FROM " +
+                    SEARCHES_TABLE_NAME;
+
+    private static final String SQL_SELECT_SEARCH_BY_TERM =
+            "SELECT " + COLUMN_NAME_ID + COMMA_SEP + COLUMN_NAME_SEARCH_DATE + COMMA_SEP + COLUMN_NAME_FRECENCY +
+                    " FROM " + SEARCHES_TABLE_NAME + " WHERE " + COLUMN_NAME_SEARCH_TERM + " = ?";
+
+    private static final String SQL_SELECT_FIRST_SEARCH_PAGE =
+            SQL_SELECT_SEARCHES + " ORDER BY " + COLUMN_NAME_SEARCH_DATE + " DESC" + COMMA_SEP + COLUMN_NAME_ID +
+                    " DESC LIMIT ?";
+
+    // the date bound lets SQLite range scan the date index, which also orders by id within a date
+    private static final String SQL_SELECT_NEXT_SEARCH_PAGE =
+            SQL_SELECT_SEARCHES + " WHERE " + COLUMN_NAME_SEARCH_DATE + " <= ? AND (" + COLUMN_NAME_SEARCH_DATE +
+                    " < ? OR " + COLUMN_NAME_ID + " < ?) ORDER BY " + COLUMN_NAME_SEARCH_DATE + " DESC" + COMMA_SEP +
+                    COLUMN_NAME_ID + " DESC LIMIT ?";
+
+    private static final String SQL_SELECT_OLDEST_SEARCHES =
+            "SELECT " + COLUMN_NAME_ID + COMMA_SEP + COLUMN_NAME_SEARCH_TERM + " FROM " + SEARCHES_TABLE_NAME +
+                    " ORDER BY " + COLUMN_NAME_SEARCH_DATE + " ASC LIMIT ?";
+
+    private static final String SQL_UPDATE_SEARCH =
+            "UPDATE " + SEARCHES_TABLE_NAME + " SET " +
+                    COLUMN_NAME_SEARCH_DATE + " = MAX(" + COLUMN_NAME_SEARCH_DATE + ", ?)" + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_COUNT + " = " + COLUMN_NAME_SEARCH_COUNT + " + ?" + COMMA_SEP +
+                    COLUMN_NAME_FRECENCY + " = ? WHERE " + COLUMN_NAME_ID + " = ?";
+
+    private static final String SQL_INSERT_SEARCH =
+            "INSERT INTO " + SEARCHES_TABLE_NAME + " (" +
+                    COLUMN_NAME_SEARCH_TERM + COMMA_SEP + COLUMN_NAME_SEARCH_DATE + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_KEY + COMMA_SEP + COLUMN_NAME_SEARCH_COUNT + COMMA_SEP + COLUMN_NAME_FRECENCY +
+                    ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String SQL_INSERT_SEARCH_IF_ABSENT =
+            "INSERT OR IGNORE INTO " + SEARCHES_TABLE_NAME + " (" +
+                    COLUMN_NAME_SEARCH_TERM + COMMA_SEP + COLUMN_NAME_SEARCH_DATE + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_KEY + COMMA_SEP + COLUMN_NAME_SEARCH_COUNT + COMMA_SEP + COLUMN_NAME_FRECENCY +
+                    ") VALUES (?, ?, ?, 1, ?)";
+
+    private static final String SQL_SELECT_FRECENCY_BY_TERM =
+            "SELECT IFNULL(" + COLUMN_NAME_FRECENCY + COMMA_SEP + COLUMN_NAME_SEARCH_DATE + ") FROM " +
+                    SEARCHES_TABLE_NAME + " WHERE " + COLUMN_NAME_SEARCH_TERM + " = ?";
+
+    private static final String SQL_UPDATE_SEARCH_BY_TERM =
+            "UPDATE " + SEARCHES_TABLE_NAME + " SET " +
+                    COLUMN_NAME_SEARCH_DATE + " = MAX(" + COLUMN_NAME_SEARCH_DATE + ", ?)" + COMMA_SEP +
+                    COLUMN_NAME_SEARCH_COUNT + " = " + COLUMN_NAME_SEARCH_COUNT + " + 1" + COMMA_SEP +
+                    COLUMN_NAME_FRECENCY + " = ? WHERE " + COLUMN_NAME_SEARCH_TERM + " = ?";
+
+    private static final String SQL_COUNT_SEARCHES = "SELECT COUNT(*) FROM " + SEARCHES_TABLE_NAME;
+
+    private static final String SQL_SELECT_IMPORT_DATE =
+            "SELECT MIN(IFNULL(MIN(" + COLUMN_NAME_SEARCH_DATE + ") - 1, ?), ?) FROM " + SEARCHES_TABLE_NAME;
+
+    private static final String SQL_DELETE_SEARCH = "DELETE FROM " + SEARCHES_TABLE_NAME + " WHERE " +
+            COLUMN_NAME_ID + " = ?";
+
+    private static final String SQL_DELETE_ALL_SEARCHES = "DELETE FROM " + SEARCHES_TABLE_NAME;
+
+    private static final String SQL_DELETE_PENDING_MIGRATIONS =
+            "DROP TABLE IF EXISTS " + SearchMigrations.PENDING_MIGRATIONS_TABLE_NAME;
+
     @Override
     public void onCreate(SQLiteDatabase db) {
         db.execSQL(SQL_CREATE_SEARCHES_TABLE);
+        db.execSQL(SQL_CREATE_SEARCHES_KEY_DATE_INDEX);
+        db.execSQL(SQL_CREATE_SEARCHES_DATE_INDEX);
+        db.execSQL(SQL_CREATE_SEARCHES_FRECENCY_INDEX);
+        db.execSQL(SQL_CREATE_SEARCHES_FTS_TABLE);
+        for (String trigger : SQL_CREATE_SEARCHES_FTS_TRIGGERS) {
+            db.execSQL(trigger);
+        }
+        db.execSQL(SearchMigrations.SQL_CREATE_PENDING_MIGRATIONS_TABLE);
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        db.execSQL(SQL_DELETE_ENTRIES);
-        onCreate(db);
+        if (!SearchMigrations.upgrade(db, oldVersion, newVersion)) {
+            recreate(db);
+        }
     }
 
+    @Override
     public void onDowngrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-        onUpgrade(db, oldVersion, newVersion);
+        recreate(db);
+    }
+
+    @Override
+    public void onOpen(SQLiteDatabase db) {
+        super.onOpen(db);
+        if (!db.isReadOnly()) {
+            SearchMigrations.migratePendingRows(db, SearchMigrations.DEFAULT_BATCH_SIZE);
+        }
     }
 
-    private static SQLiteDatabase editDatabase() {
-        if (sWritableDatabase == null) {
-            sWritableDatabase = get().getWritableDatabase();
+    private void recreate(SQLiteDatabase db) {
+        db.execSQL(SQL_DELETE_ENTRIES);
+        db.execSQL(SQL_DELETE_FTS_ENTRIES);
+        db.execSQL(SQL_DELETE_PENDING_MIGRATIONS);
+        db.execSQL(SearchMigrations.IntegerDateStep.SQL_DROP_REBUILD_TABLE);
+        onCreate(db);
+    }
+
+    @Nullable
+    private static synchronized SQLiteDatabase editDatabase() {
+        if (sWritableDatabase == null && sInstance != null) {
+            sWritableDatabase = sInstance.getWritableDatabase();
         }
         return sWritableDatabase;
     }
 
-    private static SQLiteDatabase readDatabase() {
-        if (sReadableDatabase == null) {
-            sReadableDatabase = get().getReadableDatabase();
+    private static SearchStatements editStatements(@NonNull SQLiteDatabase database) {
+        if (sStatements == null || sStatements.getDatabase() != database) {
+            sStatements = new SearchStatements(database);
+        }
+        return sStatements;
+    }
+
+    /**
+     * @return A number that changes whenever searches are added, evicted or deleted.
+     */
+    static int getDataVersion() {
+        return sDataVersion.get();
+    }
+
+    /**
+     * @return How many times a compiled statement was reused instead of being compiled again, for measuring.
+     */
+    static int getStatementReuseCount() {
+        SearchStatements statements = sStatements;
+        return statements != null ? statements.getReusedCount() : 0;
+    }
+
+    @Nullable
+    static synchronized SQLiteDatabase readDatabase() {
+        if (sReadableDatabase == null && sInstance != null) {
+            sReadableDatabase = sInstance.getReadableDatabase();
         }
         return sReadableDatabase;
     }
 
+    /**
+     * Sets the maximum number of searches kept in the database. Once the table grows past the maximum by 10%, the
+     * least recently performed searches are evicted in batches until it is back at the maximum, so that inserts do not
+     * each pay for a delete.
+     *
+     * @param maxSearchesPersisted
+     *         The maximum number of searches, or 0 or less for no limit.
+     */
+    static void setMaxSearchesPersisted(int maxSearchesPersisted) {
+        sMaxSearchesPersisted = maxSearchesPersisted;
+    }
+
     static void addPerformedSearch(@Nullable DatabaseTaskListener listener,
                                    @NonNull SearchSuggestion... searchSuggestions) {
-        new AddPerformedSearchTask(listener).execute(searchSuggestions);
+        bufferSearches(Arrays.asList(searchSuggestions), listener);
     }
 
     static void addPerformedSearches(@NonNull ArrayList<SearchSuggestion> searchSuggestions,
                                      @Nullable DatabaseTaskListener listener) {
-        new AddPerformedSearchesTask(searchSuggestions, listener).execute();
+        bufferSearches(searchSuggestions, listener);
+    }
+
+    /**
+     * Buffers searches so that bursts are written in one transaction. The buffer is flushed once it holds
+     * {@link #WRITE_BUFFER_FLUSH_SIZE} distinct terms, {@link #WRITE_BUFFER_FLUSH_DELAY} milliseconds after the first
+     * buffered search, when the app goes to the background, or when the database is destroyed. The searches are added
+     * to the in-memory index right away and merged into database reads until they are written.
+     *
+     * @param listener
+     *         Told once the searches have been written.
+     */
+    private static void bufferSearches(@NonNull List<SearchSuggestion> searchSuggestions,
+                                       @Nullable DatabaseTaskListener listener) {
+        boolean wasEmpty = sWriteBuffer.isEmpty();
+        int pending = 0;
+        for (SearchSuggestion search : searchSuggestions) {
+            pending = sWriteBuffer.add(search);
+        }
+        if (listener != null) {
+            sWriteBuffer.addListener(listener);
+        }
+        addToIndex(searchSuggestions);
+        sDataVersion.incrementAndGet();
+        if (pending >= WRITE_BUFFER_FLUSH_SIZE) {
+            flushPendingSearches();
+        } else if (wasEmpty) {
+            sHandler.postDelayed(sFlushRunnable, WRITE_BUFFER_FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Writes the buffered searches now. Searches stay buffered if the database is not initialized.
+     */
+    static void flushPendingSearches() {
+        sHandler.removeCallbacks(sFlushRunnable);
+        SearchDatabase instance = sInstance;
+        if (instance == null) {
+            return;
+        }
+        SearchWriteBuffer.Batch batch = sWriteBuffer.drain();
+        if (batch != null) {
+            new FlushSearchesTask(instance, batch).executeOnExecutor(sWriteExecutor);
+        }
     }
 
-    private static boolean addPerformedSearch(@NonNull SQLiteDatabase database,
-                                              @NonNull SearchSuggestion searchSuggestion) {
-        String insertQuery = "INSERT OR IGNORE INTO " +
-                SEARCHES_TABLE_NAME + "(" +
-                COLUMN_NAME_SEARCH_TERM + COMMA_SEP + COLUMN_NAME_SEARCH_DATE +
-                ") VALUES(" + DatabaseUtils.sqlEscapeString(searchSuggestion.getSearchTerm()) + COMMA_SEP
-                + DatabaseUtils.sqlEscapeString(searchSuggestion.getDate()) + ")";
-        return database.rawQuery(insertQuery, null).getCount() != 0;
+    /**
+     * Inserts a search, or if the term was searched before, moves its date forward, counts the hits and adds them to
+     * the frecency.
+     */
+    private static boolean addPerformedSearch(@NonNull SearchStatements statements,
+                                              @NonNull PendingSearch pendingSearch) {
+        String term = pendingSearch.getSuggestion().getSearchTerm();
+        long date = pendingSearch.getSuggestion().getDateMillis();
+        Cursor cursor = statements.getDatabase().rawQuery(SQL_SELECT_SEARCH_BY_TERM, new String[]{term});
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            if (cursor.moveToFirst()) {
+                double frecency = cursor.isNull(2) ? cursor.getDouble(1) : cursor.getDouble(2);
+                SQLiteStatement update = statements.get(SQL_UPDATE_SEARCH);
+                update.bindLong(1, date);
+                update.bindLong(2, pendingSearch.getCount());
+                update.bindDouble(3, SearchIndex.addToFrecency(frecency, pendingSearch.getFrecency()));
+                update.bindLong(4, cursor.getLong(0));
+                return update.executeUpdateDelete() > 0;
+            } else {
+                SQLiteStatement insert = statements.get(SQL_INSERT_SEARCH);
+                insert.bindString(1, term);
+                insert.bindLong(2, date);
+                insert.bindString(3, pendingSearch.getKey());
+                insert.bindLong(4, pendingSearch.getCount());
+                insert.bindDouble(5, pendingSearch.getFrecency());
+                return insert.executeInsert() != -1;
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @NonNull
+    private static String getRankingColumn(@MaterialSearchView.RankingMode int rankingMode) {
+        return rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY ? COLUMN_NAME_FRECENCY : COLUMN_NAME_SEARCH_DATE;
     }
 
+    /**
+     * Filters the performed searches by what the user typed. Once the in-memory index has loaded, every match mode is
+     * ranked in memory, synchronously and without a task unless the index is so large that ranking could hold up the
+     * main thread, in which case a task ranks it on the read executor. Otherwise the result is delivered
+     * synchronously if a shorter text is known to have matched nothing, or if the cache can answer it. The database
+     * result is added to the cache.
+     *
+     * @param cache
+     *         The cache of the view that is filtering, or null to always query the database.
+     * @return The task so that it can be canceled, or null if the result was already delivered.
+     */
+    @Nullable
     static GetPerformedSearchesStartingWithTask filterSearchesBy(int limit, @NonNull String searchTerm,
+                                                                 @MaterialSearchView.MatchMode int matchMode,
+                                                                 @MaterialSearchView.RankingMode int rankingMode,
+                                                                 @Nullable SearchResultCache cache,
                                                                  @NonNull DatabaseReadSearchesListener listener) {
-        GetPerformedSearchesStartingWithTask task = new GetPerformedSearchesStartingWithTask(searchTerm, limit, listener);
-        task.execute();
+        SearchIndex index = sIndex;
+        if (index != null && index.isLoaded()) {
+            if (index.ranksInBackground()) {
+                GetPerformedSearchesStartingWithTask task = new GetPerformedSearchesStartingWithTask(searchTerm, limit,
+                        matchMode, rankingMode, index, listener);
+                task.executeOnExecutor(sReadExecutor);
+                return task;
+            }
+            listener.onComplete(rankInMemory(index, searchTerm, limit, matchMode, rankingMode));
+            return null;
+        }
+        if (matchMode == MaterialSearchView.MATCH_MODE_FUZZY) {
+            // typos can only be matched in memory, so settle for exact prefix matches until the index has loaded
+            matchMode = MaterialSearchView.MATCH_MODE_PREFIX;
+        }
+        String key = SearchIndex.toKey(searchTerm);
+        int dataVersion = getDataVersion();
+        if (sDeadPrefixes.isDead(key, matchMode, dataVersion)) {
+            listener.onComplete(new ArrayList<SearchSuggestion>());
+            return null;
+        }
+        if (cache != null) {
+            ArrayList<SearchSuggestion> cached = cache.get(key, matchMode, rankingMode, limit, dataVersion);
+            if (cached != null) {
+                listener.onComplete(cached);
+                return null;
+            }
+        }
+        GetPerformedSearchesStartingWithTask task = new GetPerformedSearchesStartingWithTask(searchTerm, limit,
+                matchMode, rankingMode, cache, dataVersion, listener);
+        task.executeOnExecutor(sReadExecutor);
         return task;
     }
 
+    @NonNull
+    private static ArrayList<SearchSuggestion> rankInMemory(@NonNull SearchIndex index, @NonNull String searchTerm,
+                                                            int limit, @MaterialSearchView.MatchMode int matchMode,
+                                                            @MaterialSearchView.RankingMode int rankingMode) {
+        switch (matchMode) {
+            case MaterialSearchView.MATCH_MODE_FUZZY:
+                return index.fuzzyStartingWith(searchTerm, limit, rankingMode);
+            case MaterialSearchView.MATCH_MODE_PREFIX:
+                return index.startingWith(searchTerm, limit, rankingMode);
+            default:
+                return index.withWordsStartingWith(searchTerm, limit, matchMode, rankingMode);
+        }
+    }
+
     static GetPerformedSearchesTask getPerformedSearches(@NonNull DatabaseReadSearchesListener listener) {
         GetPerformedSearchesTask task = new GetPerformedSearchesTask(0, listener);
-        task.execute();
+        task.executeOnExecutor(sReadExecutor);
         return task;
     }
 
     static GetPerformedSearchesTask getPerformedSearches(int limit, DatabaseReadSearchesListener listener) {
         GetPerformedSearchesTask task = new GetPerformedSearchesTask(limit, listener);
-        task.execute();
+        task.executeOnExecutor(sReadExecutor);
         return task;
     }
 
-    static GetRecentSearchesTask getRecentSearches(int limit, @NonNull DatabaseReadSearchesListener listener) {
-        GetRecentSearchesTask task = new GetRecentSearchesTask(limit, listener);
-        task.execute();
+    /**
+     * Reads every performed search one page at a time, newest first. The next page is only read once the listener
+     * asks for it, so the history can be exported with bounded memory however long it is. Searches that are still
+     * buffered are written first, but searches performed while the pages are read may be missed. The reader holds a
+     * reference to the database until it completes, fails, is stopped or is canceled, so that the database is not
+     * closed between pages.
+     *
+     * @param pageSize
+     *         The maximum number of searches in each page.
+     *
+     * @return The reader so that it can be canceled.
+     */
+    @NonNull
+    static SearchPageReader readSearchPages(@NonNull Context context, int pageSize,
+                                            @NonNull DatabaseReadSearchPagesListener listener) {
+        acquire(context);
+        flushPendingSearches();
+        SearchPageReader reader = new SearchPageReader(Math.max(1, pageSize), listener);
+        reader.readPage(false, 0, 0);
+        return reader;
+    }
+
+    /**
+     * Gets the best ranked searches. The most recent searches are delivered synchronously from memory once they are
+     * known, as are searches ranked by frecency once the in-memory index has loaded, and no task is created.
+     *
+     * @return The task so that it can be canceled, or null if the result was already delivered.
+     */
+    @Nullable
+    static GetRecentSearchesTask getRecentSearches(int limit, @MaterialSearchView.RankingMode int rankingMode,
+                                                   @NonNull DatabaseReadSearchesListener listener) {
+        if (rankingMode == MaterialSearchView.RANKING_MODE_RECENT) {
+            ArrayList<SearchSuggestion> recent = sRecentSearches.getMostRecent(limit);
+            if (recent != null) {
+                listener.onComplete(recent);
+                return null;
+            }
+        }
+        SearchIndex index = sIndex;
+        if (index != null && index.isLoaded()) {
+            listener.onComplete(index.startingWith("", limit, rankingMode));
+            return null;
+        }
+        GetRecentSearchesTask task = new GetRecentSearchesTask(limit, rankingMode, listener);
+        task.executeOnExecutor(sReadExecutor);
         return task;
     }
 
+    /**
+     * @return The query for searches whose key is at least the first argument and, if bounded, below the second,
+     * limited to the last argument.
+     */
+    @NonNull
+    static String getStartsWithQuery(boolean bounded, @MaterialSearchView.RankingMode int rankingMode) {
+        return SQL_SELECT_SEARCHES
+                + " WHERE " + COLUMN_NAME_SEARCH_KEY + " >= ?"
+                + (bounded ? " AND " + COLUMN_NAME_SEARCH_KEY + " < ?" : "")
+                + " ORDER BY " + getRankingColumn(rankingMode) + " DESC LIMIT ?";
+    }
+
+    /**
+     * @return The query for searches matching the FTS expression in the first argument, limited to the second.
+     */
+    @NonNull
+    static String getFullTextQuery(@MaterialSearchView.RankingMode int rankingMode) {
+        return SQL_SELECT_SEARCHES
+                + " WHERE " + COLUMN_NAME_ID + " IN (SELECT " + COLUMN_NAME_FTS_DOC_ID
+                + " FROM " + SEARCHES_FTS_TABLE_NAME + " WHERE " + SEARCHES_FTS_TABLE_NAME + " MATCH ?)"
+                + " ORDER BY " + getRankingColumn(rankingMode) + " DESC LIMIT ?";
+    }
+
+    /**
+     * @return The query for the best ranked searches, limited to the argument.
+     */
+    @NonNull
+    static String getRecentSearchesQuery(@MaterialSearchView.RankingMode int rankingMode) {
+        return SQL_SELECT_SEARCHES + " ORDER BY " + getRankingColumn(rankingMode) + " DESC LIMIT ?";
+    }
+
     private static SearchSuggestion cursorToPerformedSearch(Cursor cursor) {
-        return new SearchSuggestion(cursor.getString(1), cursor.getString(2));
+        // the stored key saves folding the term again, when the query selected it
+        return new SearchSuggestion(cursor.getString(1), cursor.getLong(2),
+                cursor.getColumnCount() > 4 ? cursor.getString(4) : null);
+    }
+
+    /**
+     * @return The score a row read with {@link #SQL_SELECT_SEARCHES} is ranked by.
+     */
+    private static double getRankingScore(@NonNull Cursor cursor, @MaterialSearchView.RankingMode int rankingMode) {
+        if (rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY && !cursor.isNull(3)) {
+            return cursor.getDouble(3);
+        }
+        return cursor.getLong(2);
+    }
+
+    /**
+     * Merges searches that were performed but are not written yet into results read from the database, so that reads
+     * always see the searches performed before them.
+     *
+     * @param results
+     *         The searches read from the database, best ranked first. They are replaced by the merged results.
+     * @param scores
+     *         The ranking score of each search read from the database.
+     * @param key
+     *         The folded text the results were filtered by, or null if they were not filtered.
+     */
+    private static void mergeUncommittedSearches(@NonNull ArrayList<SearchSuggestion> results, @NonNull double[] scores,
+                                                 @Nullable String key, @MaterialSearchView.MatchMode int matchMode,
+                                                 @MaterialSearchView.RankingMode int rankingMode, int limit) {
+        ArrayList<PendingSearch> uncommitted = sWriteBuffer.getUncommitted();
+        if (uncommitted.isEmpty()) {
+            return;
+        }
+        boolean byFrecency = rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY;
+        ArrayList<String> tokens = key != null ? SearchTokenizer.getTokens(key) : null;
+        ArrayList<SearchSuggestion> searches = new ArrayList<>(results);
+        double[] merged = Arrays.copyOf(scores, results.size() + uncommitted.size());
+        for (PendingSearch pending : uncommitted) {
+            SearchSuggestion suggestion = pending.getSuggestion();
+            double score = byFrecency ? pending.getFrecency() : suggestion.getDateMillis();
+            int position = searches.size() - 1;
+            while (position >= 0 && !searches.get(position).getSearchTerm().equals(suggestion.getSearchTerm())) {
+                position--;
+            }
+            if (position >= 0) {
+                merged[position] = byFrecency ? SearchIndex.addToFrecency(merged[position], score)
+                        : Math.max(merged[position], score);
+                if (suggestion.getDateMillis() > searches.get(position).getDateMillis()) {
+                    searches.set(position, suggestion);
+                }
+            } else if (tokens == null || SearchTokenizer.matches(pending.getKey(), key, tokens, matchMode)) {
+                merged[searches.size()] = score;
+                searches.add(suggestion);
+            }
+        }
+        SearchTopK<SearchSuggestion> best = new SearchTopK<>(limit);
+        for (int i = 0; i < searches.size(); i++) {
+            best.offer(searches.get(i), merged[i]);
+        }
+        results.clear();
+        results.addAll(best.toBestFirst());
+    }
+
+    /**
+     * Gets the smallest key that sorts after every key starting with the prefix, so a prefix match can be written as
+     * a range over the key index. SQLite compares text as UTF-8 bytes, which orders the same way as code points.
+     *
+     * @return The exclusive upper bound, or null if the prefix has none.
+     */
+    @Nullable
+    static String getPrefixUpperBound(@NonNull String prefix) {
+        int end = prefix.length();
+        while (end > 0) {
+            int codePoint = prefix.codePointBefore(end);
+            int start = end - Character.charCount(codePoint);
+            if (codePoint < Character.MAX_CODE_POINT) {
+                int next = codePoint + 1;
+                if (next >= Character.MIN_SURROGATE && next <= Character.MAX_SURROGATE) {
+                    next = Character.MAX_SURROGATE + 1;
+                }
+                return new StringBuilder(start + 2).append(prefix, 0, start).appendCodePoint(next).toString();
+            }
+            end = start;
+        }
+        return null;
+    }
+
+    /**
+     * Builds an FTS MATCH expression from a folded search key. Token prefix mode matches the typed words as a phrase
+     * that may start at any word, with the last word treated as a prefix. Full text mode matches every typed word as a
+     * word prefix, in any order.
+     *
+     * @return The expression, or null if the key contains no words.
+     */
+    @Nullable
+    static String getMatchExpression(@NonNull String key, @MaterialSearchView.MatchMode int matchMode) {
+        ArrayList<String> tokens = SearchTokenizer.getTokens(key);
+        if (tokens.isEmpty()) {
+            return null;
+        }
+        StringBuilder expression = new StringBuilder();
+        if (matchMode == MaterialSearchView.MATCH_MODE_TOKEN_PREFIX) {
+            expression.append('"').append(TextUtils.join(" ", tokens)).append("*\"");
+        } else {
+            for (String token : tokens) {
+                if (expression.length() > 0) {
+                    expression.append(' ');
+                }
+                expression.append('"').append(token).append("*\"");
+            }
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Tells whether every search matching a longer text that starts with the given text also matches the given text,
+     * so that results for the text can be narrowed in memory as more is typed. This fails only for text without words
+     * in the word prefix modes, which matches nothing.
+     */
+    static boolean narrowsWhenExtended(@NonNull String key, @MaterialSearchView.MatchMode int matchMode) {
+        return matchMode == MaterialSearchView.MATCH_MODE_PREFIX || !SearchTokenizer.getTokens(key).isEmpty();
+    }
+
+    private static void addToIndex(@NonNull Iterable<SearchSuggestion> searchSuggestions) {
+        SearchIndex index = sIndex;
+        if (index != null) {
+            index.add(searchSuggestions);
+        }
+        for (SearchSuggestion search : searchSuggestions) {
+            sRecentSearches.add(search);
+        }
     }
 
+    private static void enforceCapacity(@NonNull SearchStatements statements, int searchesAdded) {
+        int maxSearches = sMaxSearchesPersisted;
+        if (maxSearches <= 0) {
+            return;
+        }
+        long evictionThreshold = maxSearches + Math.max(1, (long) (maxSearches * EVICTION_SLACK));
+        if (sEstimatedSearchCount >= 0) {
+            sEstimatedSearchCount += searchesAdded;
+            if (sEstimatedSearchCount <= evictionThreshold) {
+                return;
+            }
+        }
+        // The estimate counts ignored duplicates too, so only trust an actual count before evicting.
+        sEstimatedSearchCount = statements.get(SQL_COUNT_SEARCHES).simpleQueryForLong();
+        if (sEstimatedSearchCount <= evictionThreshold) {
+            return;
+        }
+        long excess = sEstimatedSearchCount - maxSearches;
+        while (excess > 0) {
+            int evicted = evictOldestSearches(statements, (int) Math.min(excess, EVICTION_BATCH_SIZE));
+            if (evicted == 0) {
+                break;
+            }
+            excess -= evicted;
+            sEstimatedSearchCount -= evicted;
+        }
+    }
+
+    private static int evictOldestSearches(@NonNull SearchStatements statements, int count) {
+        ArrayList<String> evictedTerms = new ArrayList<>(count);
+        SQLiteDatabase database = statements.getDatabase();
+        database.beginTransactionNonExclusive();
+        try {
+            Cursor cursor = database.rawQuery(SQL_SELECT_OLDEST_SEARCHES, new String[]{String.valueOf(count)});
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        SQLiteStatement delete = statements.get(SQL_DELETE_SEARCH);
+                        delete.bindLong(1, cursor.getLong(0));
+                        delete.executeUpdateDelete();
+                        evictedTerms.add(cursor.getString(1));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+        if (!evictedTerms.isEmpty()) {
+            sDataVersion.incrementAndGet();
+        }
+        SearchIndex index = sIndex;
+        if (index != null) {
+            index.remove(evictedTerms);
+        }
+        for (String term : evictedTerms) {
+            sRecentSearches.remove(term);
+        }
+        return evictedTerms.size();
+    }
+
+    /**
+     * Imports searches in bulk, for seeding the history from a catalogue. Searches are written with compiled
+     * statements in transactions of at most {@link #IMPORT_CHUNK_SIZE} rows or {@link #IMPORT_CHUNK_NANOS}, so reads
+     * are never locked out for longer than that. Each term is dated one millisecond before the previous one, starting
+     * just before the oldest search already stored. Terms earlier in the source therefore rank as more recent, while
+     * every imported search ranks below the history the user built up, so trimming the history to the maximum number
+     * of searches persisted once the import has finished evicts imported searches before any of the user's own. A term
+     * that is already stored keeps its date and only counts another hit. Imported searches are suggested once the
+     * import has finished. The import holds a reference to the database until it finishes or is canceled, so it can
+     * run before any view has been attached.
+     *
+     * @return The task so that it can be canceled. Chunks that were already written are kept.
+     */
+    @NonNull
+    static ImportSearchesTask importSearches(@NonNull Context context, @NonNull SearchTermSource source,
+                                             @Nullable DatabaseImportListener listener) {
+        acquire(context);
+        ImportSearchesTask task = new ImportSearchesTask(source, System.currentTimeMillis(), listener);
+        task.executeOnExecutor(sWriteExecutor);
+        return task;
+    }
+
+    /**
+     * Inserts an imported search, or counts another hit for a term that is already stored.
+     *
+     * @return True if the term was new.
+     */
+    private static boolean importSearch(@NonNull SearchStatements statements, @NonNull String term, long date) {
+        SQLiteStatement insert = statements.get(SQL_INSERT_SEARCH_IF_ABSENT);
+        insert.bindString(1, term);
+        insert.bindLong(2, date);
+        insert.bindString(3, SearchIndex.toKey(term));
+        insert.bindDouble(4, date);
+        if (insert.executeInsert() != -1) {
+            return true;
+        }
+        SQLiteStatement select = statements.get(SQL_SELECT_FRECENCY_BY_TERM);
+        select.bindString(1, term);
+        double frecency = Double.parseDouble(select.simpleQueryForString());
+        SQLiteStatement update = statements.get(SQL_UPDATE_SEARCH_BY_TERM);
+        update.bindLong(1, date);
+        update.bindDouble(2, SearchIndex.addToFrecency(frecency, date));
+        update.bindString(3, term);
+        update.executeUpdateDelete();
+        return false;
+    }
+
+    /**
+     * Replaces the in-memory index with one loaded from the database, after rows were written around it.
+     */
+    private static synchronized void reloadIndex() {
+        if (sInstance != null) {
+            sIndex = new SearchIndex();
+            new LoadSearchIndexTask(sIndex).executeOnExecutor(sReadExecutor);
+        }
+    }
+
+    /**
+     * Deletes every search. Searches that are buffered or being written are dropped along with them, and disappear from
+     * the index and from reads right away, so a cleared history cannot come back once they would have been written.
+     */
     static void deleteDatabase(@Nullable DatabaseTaskListener listener) {
-        new DeleteDatabaseTask(listener).execute();
+        deleteDatabase(listener, false);
     }
 
-    @SuppressWarnings("unused")
-    private static class AddPerformedSearchTask extends AsyncTask<SearchSuggestion, Void, Boolean> {
-        private DatabaseTaskListener mListener = null;
+    /**
+     * Deletes every search, holding a reference to the database only until the delete has run, for callers that do
+     * not hold one of their own.
+     *
+     * @see #deleteDatabase(DatabaseTaskListener)
+     */
+    static void deleteDatabase(@NonNull Context context, @Nullable DatabaseTaskListener listener) {
+        acquire(context);
+        deleteDatabase(listener, true);
+    }
 
-        private AddPerformedSearchTask(@Nullable DatabaseTaskListener listener) {
-            mListener = listener;
+    /**
+     * @param release
+     *         True to release a reference to the database once the delete has run.
+     */
+    private static void deleteDatabase(@Nullable DatabaseTaskListener listener, boolean release) {
+        sWriteBuffer.discard();
+        sRecentSearches.clear();
+        SearchIndex index = sIndex;
+        if (index != null) {
+            index.clear();
+        }
+        sDataVersion.incrementAndGet();
+        new DeleteDatabaseTask(listener, release).executeOnExecutor(sWriteExecutor);
+        // listeners of dropped searches are told once the delete has run
+        flushPendingSearches();
+    }
+
+    private static class FlushSearchesTask extends AsyncTask<Void, Void, Boolean> {
+        private final SearchDatabase mDatabase;
+        private final SearchWriteBuffer.Batch mBatch;
+
+        private FlushSearchesTask(@NonNull SearchDatabase database, @NonNull SearchWriteBuffer.Batch batch) {
+            mDatabase = database;
+            mBatch = batch;
         }
 
         @Override
-        protected final Boolean doInBackground(SearchSuggestion... searchSuggestions) {
-            boolean success = false;
-            if (searchSuggestions != null) {
-                List<SearchSuggestion> searches = Arrays.asList(searchSuggestions);
-                success = true;
-                SQLiteDatabase database = editDatabase();
-                database.beginTransaction();
-                for (SearchSuggestion search : searches) {
-                    if (!addPerformedSearch(database, search)) {
-                        success = false;
+        protected final Boolean doInBackground(Void... voids) {
+            boolean success = true;
+            ArrayList<PendingSearch> searches = mBatch.getSearches();
+            if (mBatch.isDropped() || searches.isEmpty()) {
+                sWriteBuffer.committed(mBatch);
+                return true;
+            }
+            try {
+                SearchStatements statements = editStatements(mDatabase.getWritableDatabase());
+                SQLiteDatabase database = statements.getDatabase();
+                database.beginTransactionNonExclusive();
+                try {
+                    for (PendingSearch search : searches) {
+                        if (!addPerformedSearch(statements, search)) {
+                            success = false;
+                        }
                     }
-                }
-                if (database.inTransaction()) {
                     database.setTransactionSuccessful();
+                } finally {
                     database.endTransaction();
                 }
+                enforceCapacity(statements, searches.size());
+            } finally {
+                sWriteBuffer.committed(mBatch);
             }
             return success;
         }
@@ -221,66 +1064,114 @@ class SearchDatabase extends SQLiteOpenHelper {
         @Override
         protected void onPostExecute(Boolean successful) {
             super.onPostExecute(successful);
-            if (mListener != null) {
+            for (DatabaseTaskListener listener : mBatch.getListeners()) {
                 if (successful != null && successful) {
-                    mListener.onDatabaseEditSuccess();
+                    listener.onDatabaseEditSuccess();
                 } else {
-                    mListener.onDatabaseEditFailure();
+                    listener.onDatabaseEditFailure();
                 }
             }
         }
-
-        private void cancel() {
-            mListener = null;
-            cancel(true);
-        }
     }
 
-    @SuppressWarnings("unused")
-    private static class AddPerformedSearchesTask extends AsyncTask<Void, Void, Boolean> {
-        private ArrayList<SearchSuggestion> mSearchSuggestions;
-        private DatabaseTaskListener mListener = null;
+    static class ImportSearchesTask extends AsyncTask<Void, Integer, Boolean> {
+        private final SearchTermSource mSource;
+        private final long mDate;
+        private DatabaseImportListener mListener = null;
+        private int mImported = 0;
 
-        private AddPerformedSearchesTask(@NonNull ArrayList<SearchSuggestion> searchSuggestions,
-                                         @Nullable DatabaseTaskListener listener) {
-            mSearchSuggestions = searchSuggestions;
+        private ImportSearchesTask(@NonNull SearchTermSource source, long date,
+                                   @Nullable DatabaseImportListener listener) {
+            mSource = source;
+            mDate = date;
             mListener = listener;
         }
 
         @Override
         protected final Boolean doInBackground(Void... voids) {
-            boolean success = true;
-            SQLiteDatabase database = editDatabase();
-            if (database != null && database.isOpen()) {
-                database.beginTransaction();
-                for (SearchSuggestion search : mSearchSuggestions) {
-                    if (!addPerformedSearch(database, search)) {
-                        success = false;
-                    }
+            try {
+                SQLiteDatabase database = editDatabase();
+                if (database == null || !database.isOpen()) {
+                    return false;
                 }
-                if (database.inTransaction()) {
-                    database.setTransactionSuccessful();
-                    database.endTransaction();
+                SearchStatements statements = editStatements(database);
+                SQLiteStatement importDate = statements.get(SQL_SELECT_IMPORT_DATE);
+                importDate.bindLong(1, mDate);
+                importDate.bindLong(2, mDate);
+                long newestDate = importDate.simpleQueryForLong();
+                int inserted = 0;
+                try {
+                    CharSequence term = mSource.next();
+                    while (term != null && !isCancelled()) {
+                        long chunkStart = System.nanoTime();
+                        int chunkSize = 0;
+                        database.beginTransactionNonExclusive();
+                        try {
+                            while (term != null && chunkSize < IMPORT_CHUNK_SIZE
+                                    && System.nanoTime() - chunkStart < IMPORT_CHUNK_NANOS) {
+                                String search = term.toString().trim();
+                                if (!search.isEmpty()) {
+                                    if (importSearch(statements, search, newestDate - mImported)) {
+                                        inserted++;
+                                    }
+                                    mImported++;
+                                    chunkSize++;
+                                }
+                                term = mSource.next();
+                            }
+                            database.setTransactionSuccessful();
+                        } finally {
+                            database.endTransaction();
+                        }
+                        sDataVersion.incrementAndGet();
+                        publishProgress(mImported);
+                    }
+                } catch (IOException e) {
+                    return false;
+                } finally {
+                    enforceCapacity(statements, inserted);
                 }
+                return true;
+            } finally {
+                mSource.close();
+            }
+        }
+
+        @Override
+        protected void onProgressUpdate(Integer... values) {
+            super.onProgressUpdate(values);
+            if (mListener != null) {
+                mListener.onImportProgress(values[0]);
             }
-            return success;
         }
 
         @Override
         protected void onPostExecute(Boolean successful) {
             super.onPostExecute(successful);
+            reloadIndex();
+            release();
             if (mListener != null) {
                 if (successful != null && successful) {
-                    mListener.onDatabaseEditSuccess();
+                    mListener.onImportComplete(mImported);
                 } else {
-                    mListener.onDatabaseEditFailure();
+                    mListener.onImportFailure(mImported);
                 }
             }
         }
 
-        private void cancel() {
+        @Override
+        protected void onCancelled(Boolean successful) {
+            super.onCancelled(successful);
+            reloadIndex();
+            release();
+        }
+
+        /**
+         * Stops the import once the current chunk has been written. The listener is not called again.
+         */
+        void cancel() {
             mListener = null;
-            cancel(true);
+            cancel(false);
         }
     }
 
@@ -296,20 +1187,18 @@ class SearchDatabase extends SQLiteOpenHelper {
 
         @Override
         protected final ArrayList<SearchSuggestion> doInBackground(Void... voids) {
-            String limit = mRowLimit > 0 ? String.valueOf(mRowLimit) : null;
+            // a negative limit is no limit, so the text stays the same either way
+            String limit = String.valueOf(mRowLimit > 0 ? mRowLimit : -1);
             ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>();
             SQLiteDatabase readableDatabase = readDatabase();
             if (readableDatabase != null && readableDatabase.isOpen()) {
-                Cursor cursor = readableDatabase.query(true, SearchDatabase.SEARCHES_TABLE_NAME,
-                        sSearchesTableAllColumns, null, null, null, null, COLUMN_NAME_SEARCH_DATE + " DESC", limit);
+                Cursor cursor = readableDatabase.rawQuery(
+                        getRecentSearchesQuery(MaterialSearchView.RANKING_MODE_RECENT), new String[]{limit});
                 if (cursor != null) {
                     cursor.moveToFirst();
                     while (!cursor.isAfterLast()) {
                         SearchSuggestion searchSuggestion = cursorToPerformedSearch(cursor);
                         searchSuggestions.add(searchSuggestion);
-                        if (searchSuggestions.size() > 4) {
-                            break;
-                        }
                         cursor.moveToNext();
                     }
                     // make sure to close the cursor
@@ -333,58 +1222,262 @@ class SearchDatabase extends SQLiteOpenHelper {
         }
     }
 
+    /**
+     * Reads the pages of the search history in order, keyed on the date and id of the last search read so that no page
+     * has to skip over the rows before it.
+     */
+    static class SearchPageReader {
+        private final int mPageSize;
+        private final DatabaseReadSearchPagesListener mListener;
+        private ReadSearchPageTask mTask;
+        private boolean mCanceled = false;
+        private boolean mReleased = false;
+
+        private SearchPageReader(int pageSize, @NonNull DatabaseReadSearchPagesListener listener) {
+            mPageSize = pageSize;
+            mListener = listener;
+        }
+
+        private void readPage(boolean after, long date, long id) {
+            mTask = new ReadSearchPageTask(this, after, date, id);
+            mTask.executeOnExecutor(sReadExecutor);
+        }
+
+        /**
+         * @param searches
+         *         The page, or null if the database could not be read.
+         */
+        private void onPageRead(@NonNull ReadSearchPageTask task, @Nullable ArrayList<SearchSuggestion> searches) {
+            if (mCanceled) {
+                return;
+            }
+            if (searches == null) {
+                releaseDatabase();
+                mListener.onFailure();
+                return;
+            }
+            boolean last = searches.size() < mPageSize;
+            if (!searches.isEmpty() && !mListener.onPage(searches)) {
+                releaseDatabase();
+                return;
+            }
+            if (last) {
+                releaseDatabase();
+                mListener.onComplete();
+            } else {
+                readPage(true, task.mLastDate, task.mLastId);
+            }
+        }
+
+        private void releaseDatabase() {
+            if (!mReleased) {
+                mReleased = true;
+                release();
+            }
+        }
+
+        /**
+         * Stops reading. No more pages are delivered.
+         */
+        void cancel() {
+            mCanceled = true;
+            if (mTask != null) {
+                mTask.cancel();
+            }
+            releaseDatabase();
+        }
+    }
+
+    private static class ReadSearchPageTask extends AsyncTask<Void, Void, ArrayList<SearchSuggestion>> {
+        private final SearchPageReader mReader;
+        private final boolean mAfter;
+        private long mLastDate;
+        private long mLastId;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+
+        private ReadSearchPageTask(@NonNull SearchPageReader reader, boolean after, long date, long id) {
+            mReader = reader;
+            mAfter = after;
+            mLastDate = date;
+            mLastId = id;
+        }
+
+        /**
+         * @return The page, or null if the database could not be read.
+         */
+        @Override
+        protected final ArrayList<SearchSuggestion> doInBackground(Void... voids) {
+            ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>(mReader.mPageSize);
+            SQLiteDatabase readableDatabase;
+            try {
+                readableDatabase = readDatabase();
+            } catch (SQLiteException e) {
+                return null;
+            }
+            if (readableDatabase != null && readableDatabase.isOpen()) {
+                String limit = String.valueOf(mReader.mPageSize);
+                Cursor cursor = null;
+                try {
+                    if (mAfter) {
+                        String date = String.valueOf(mLastDate);
+                        cursor = readableDatabase.rawQuery(SQL_SELECT_NEXT_SEARCH_PAGE,
+                                new String[]{date, date, String.valueOf(mLastId), limit}, mCancellationSignal);
+                    } else {
+                        cursor = readableDatabase.rawQuery(SQL_SELECT_FIRST_SEARCH_PAGE, new String[]{limit},
+                                mCancellationSignal);
+                    }
+                    if (cursor != null) {
+                        while (cursor.moveToNext()) {
+                            searchSuggestions.add(cursorToPerformedSearch(cursor));
+                            mLastId = cursor.getLong(0);
+                            mLastDate = cursor.getLong(2);
+                        }
+                    }
+                } catch (OperationCanceledException e) {
+                    searchSuggestions.clear();
+                } catch (SQLiteException e) {
+                    return null;
+                } finally {
+                    // make sure to close the cursor
+                    if (cursor != null) {
+                        cursor.close();
+                    }
+                }
+                return searchSuggestions;
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(@Nullable ArrayList<SearchSuggestion> searchSuggestions) {
+            super.onPostExecute(searchSuggestions);
+            mReader.onPageRead(this, searchSuggestions);
+        }
+
+        private void cancel() {
+            mCancellationSignal.cancel();
+            cancel(true);
+        }
+    }
+
     static class GetPerformedSearchesStartingWithTask extends AsyncTask<Void, Void, ArrayList<SearchSuggestion>> {
         private final String mStartsWith;
         private int mLimit = 0;
+        private final int mMatchMode;
+        private final int mRankingMode;
+        private final SearchResultCache mCache;
+        private final int mDataVersion;
+        // the in-memory index to rank, or null to query the database
+        private final SearchIndex mIndex;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
         private DatabaseReadSearchesListener mListener = null;
+        private boolean mQueried = false;
+
+        private GetPerformedSearchesStartingWithTask(@NonNull String startsWith, int limit,
+                                                     @MaterialSearchView.MatchMode int matchMode,
+                                                     @MaterialSearchView.RankingMode int rankingMode,
+                                                     @Nullable SearchResultCache cache, int dataVersion,
+                                                     @Nullable DatabaseReadSearchesListener listener) {
+            mStartsWith = startsWith;
+            mLimit = limit;
+            mMatchMode = matchMode;
+            mRankingMode = rankingMode;
+            mCache = cache;
+            mDataVersion = dataVersion;
+            mIndex = null;
+            mListener = listener;
+        }
 
-        private GetPerformedSearchesStartingWithTask(@NonNull String startsWith, int limit, @Nullable DatabaseReadSearchesListener listener) {
+        private GetPerformedSearchesStartingWithTask(@NonNull String startsWith, int limit,
+                                                     @MaterialSearchView.MatchMode int matchMode,
+                                                     @MaterialSearchView.RankingMode int rankingMode,
+                                                     @NonNull SearchIndex index,
+                                                     @Nullable DatabaseReadSearchesListener listener) {
             mStartsWith = startsWith;
             mLimit = limit;
+            mMatchMode = matchMode;
+            mRankingMode = rankingMode;
+            mCache = null;
+            mDataVersion = 0;
+            mIndex = index;
             mListener = listener;
         }
 
         @Override
         protected final ArrayList<SearchSuggestion> doInBackground(Void... voids) {
+            if (mIndex != null) {
+                // the index answers without caching, as it is always up to date
+                return rankInMemory(mIndex, mStartsWith, mLimit, mMatchMode, mRankingMode);
+            }
             ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>();
             SQLiteDatabase readableDatabase = readDatabase();
             if (readableDatabase != null && readableDatabase.isOpen()) {
-                Cursor cursor = readableDatabase.rawQuery(getStartsWithQuery(mStartsWith, mLimit), null);
-                if (cursor != null) {
-                    cursor.moveToFirst();
-                    while (!cursor.isAfterLast()) {
-                        SearchSuggestion searchSuggestion = cursorToPerformedSearch(cursor);
-                        searchSuggestions.add(searchSuggestion);
-                        if (searchSuggestions.size() > 4) {
-                            break;
+                String key = SearchIndex.toKey(mStartsWith);
+                Cursor cursor = null;
+                try {
+                    if (mMatchMode == MaterialSearchView.MATCH_MODE_PREFIX) {
+                        String upperBound = getPrefixUpperBound(key);
+                        String limit = String.valueOf(mLimit);
+                        String[] selectionArgs = upperBound != null ? new String[]{key, upperBound, limit}
+                                : new String[]{key, limit};
+                        cursor = readableDatabase.rawQuery(getStartsWithQuery(upperBound != null, mRankingMode),
+                                selectionArgs, mCancellationSignal);
+                    } else {
+                        String matchExpression = getMatchExpression(key, mMatchMode);
+                        if (matchExpression == null) {
+                            return searchSuggestions;
+                        }
+                        cursor = readableDatabase.rawQuery(getFullTextQuery(mRankingMode),
+                                new String[]{matchExpression, String.valueOf(mLimit)}, mCancellationSignal);
+                    }
+                    double[] scores = new double[cursor != null ? cursor.getCount() : 0];
+                    if (cursor != null) {
+                        cursor.moveToFirst();
+                        while (!cursor.isAfterLast()) {
+                            SearchSuggestion searchSuggestion = cursorToPerformedSearch(cursor);
+                            scores[searchSuggestions.size()] = getRankingScore(cursor, mRankingMode);
+                            searchSuggestions.add(searchSuggestion);
+                            cursor.moveToNext();
                         }
-                        cursor.moveToNext();
                     }
+                    mergeUncommittedSearches(searchSuggestions, scores, key, mMatchMode, mRankingMode, mLimit);
+                    mQueried = true;
+                } catch (OperationCanceledException e) {
+                    searchSuggestions.clear();
+                } finally {
                     // make sure to close the cursor
-                    cursor.close();
+                    if (cursor != null) {
+                        cursor.close();
+                    }
                 }
             }
             return searchSuggestions;
         }
 
-        private String getStartsWithQuery(String startsWith, int limit) {
-            return "SELECT * FROM "
-                    + SEARCHES_TABLE_NAME
-                    + " WHERE LOWER(" + COLUMN_NAME_SEARCH_TERM + ")"
-                    + " LIKE " + DatabaseUtils.sqlEscapeString(startsWith.toLowerCase() + "%")
-                    + " ORDER BY " + COLUMN_NAME_SEARCH_DATE + " DESC LIMIT " + String.valueOf(limit);
-        }
-
         @Override
         protected void onPostExecute(@NonNull ArrayList<SearchSuggestion> searchSuggestions) {
             super.onPostExecute(searchSuggestions);
+            String key = SearchIndex.toKey(mStartsWith);
+            // only a finished query that stays valid as more text is typed can answer later queries
+            if (mQueried && mListener != null && narrowsWhenExtended(key, mMatchMode)) {
+                if (searchSuggestions.isEmpty()) {
+                    sDeadPrefixes.add(key, mMatchMode, mDataVersion);
+                }
+                if (mCache != null) {
+                    mCache.put(key, mMatchMode, mRankingMode, mLimit, mDataVersion, searchSuggestions);
+                }
+            }
             if (mListener != null) {
                 mListener.onComplete(searchSuggestions);
             }
         }
 
+        /**
+         * Drops the result and stops the query inside SQLite if it is still running.
+         */
         void cancel() {
             mListener = null;
+            mCancellationSignal.cancel();
             cancel(true);
         }
     }
@@ -392,10 +1485,14 @@ class SearchDatabase extends SQLiteOpenHelper {
     static class GetRecentSearchesTask extends AsyncTask<Void, Void, ArrayList<SearchSuggestion>> {
 
         private int mLimit = DEFAULT_LIMIT;
+        private final int mRankingMode;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
         private DatabaseReadSearchesListener mListener = null;
 
-        private GetRecentSearchesTask(int limit, @Nullable DatabaseReadSearchesListener listener) {
+        private GetRecentSearchesTask(int limit, @MaterialSearchView.RankingMode int rankingMode,
+                                      @Nullable DatabaseReadSearchesListener listener) {
             mLimit = limit;
+            mRankingMode = rankingMode;
             mListener = listener;
         }
 
@@ -404,22 +1501,29 @@ class SearchDatabase extends SQLiteOpenHelper {
             ArrayList<SearchSuggestion> searchSuggestions = new ArrayList<>();
             SQLiteDatabase readableDatabase = readDatabase();
             if (readableDatabase != null && readableDatabase.isOpen()) {
-                String query = "SELECT * FROM "
-                        + SEARCHES_TABLE_NAME
-                        + " ORDER BY " + COLUMN_NAME_SEARCH_DATE + " DESC LIMIT " + DEFAULT_LIMIT;
-                Cursor cursor = readableDatabase.rawQuery(query, null);
-                if (cursor != null) {
-                    cursor.moveToFirst();
-                    while (!cursor.isAfterLast()) {
-                        SearchSuggestion searchSuggestion = cursorToPerformedSearch(cursor);
-                        searchSuggestions.add(searchSuggestion);
-                        if (searchSuggestions.size() == mLimit) {
-                            break;
+                Cursor cursor = null;
+                try {
+                    cursor = readableDatabase.rawQuery(getRecentSearchesQuery(mRankingMode),
+                            new String[]{String.valueOf(mLimit)}, mCancellationSignal);
+                    double[] scores = new double[cursor != null ? cursor.getCount() : 0];
+                    if (cursor != null) {
+                        cursor.moveToFirst();
+                        while (!cursor.isAfterLast()) {
+                            SearchSuggestion searchSuggestion = cursorToPerformedSearch(cursor);
+                            scores[searchSuggestions.size()] = getRankingScore(cursor, mRankingMode);
+                            searchSuggestions.add(searchSuggestion);
+                            cursor.moveToNext();
                         }
-                        cursor.moveToNext();
                     }
+                    mergeUncommittedSearches(searchSuggestions, scores, null, MaterialSearchView.MATCH_MODE_PREFIX,
+                            mRankingMode, mLimit);
+                } catch (OperationCanceledException e) {
+                    searchSuggestions.clear();
+                } finally {
                     // make sure to close the cursor
-                    cursor.close();
+                    if (cursor != null) {
+                        cursor.close();
+                    }
                 }
             }
             return searchSuggestions;
@@ -433,26 +1537,94 @@ class SearchDatabase extends SQLiteOpenHelper {
             }
         }
 
+        /**
+         * Drops the result and stops the query inside SQLite if it is still running.
+         */
         void cancel() {
             mListener = null;
+            mCancellationSignal.cancel();
             cancel(true);
         }
     }
 
+    private static class LoadSearchIndexTask extends AsyncTask<Void, Void, Void> {
+        private final SearchIndex mIndex;
+
+        private LoadSearchIndexTask(@NonNull SearchIndex index) {
+            mIndex = index;
+        }
+
+        @Override
+        protected final Void doInBackground(Void... voids) {
+            SQLiteDatabase readableDatabase = readDatabase();
+            if (readableDatabase != null && readableDatabase.isOpen()) {
+                Cursor cursor = readableDatabase.query(SEARCHES_TABLE_NAME, sSearchesTableIndexColumns,
+                        null, null, null, null, null);
+                if (cursor != null) {
+                    // loaded in chunks, so searches recorded meanwhile never wait long for the index
+                    ArrayList<SearchSuggestion> chunk = new ArrayList<>(INDEX_LOAD_CHUNK_SIZE);
+                    double[] frecencies = new double[INDEX_LOAD_CHUNK_SIZE];
+                    cursor.moveToFirst();
+                    while (!cursor.isAfterLast()) {
+                        SearchSuggestion search = cursorToPerformedSearch(cursor);
+                        frecencies[chunk.size()] = cursor.isNull(3) ? search.getDateMillis() : cursor.getDouble(3);
+                        chunk.add(search);
+                        if (chunk.size() == INDEX_LOAD_CHUNK_SIZE) {
+                            mIndex.load(chunk, frecencies);
+                            chunk.clear();
+                        }
+                        cursor.moveToNext();
+                    }
+                    // make sure to close the cursor
+                    cursor.close();
+                    mIndex.load(chunk, frecencies);
+                    // searches that are not written yet were missed by the query
+                    List<PendingSearch> uncommitted = sWriteBuffer.getUncommitted();
+                    chunk = new ArrayList<>(uncommitted.size());
+                    frecencies = new double[uncommitted.size()];
+                    for (PendingSearch pending : uncommitted) {
+                        frecencies[chunk.size()] = pending.getFrecency();
+                        chunk.add(pending.getSuggestion());
+                    }
+                    mIndex.load(chunk, frecencies);
+                    mIndex.setLoaded(true);
+                }
+            }
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void aVoid) {
+            super.onPostExecute(aVoid);
+            // searches are only added on the main thread, so none can be missed between reading the index and filling
+            // the ring
+            if (mIndex.isLoaded() && mIndex == sIndex) {
+                sRecentSearches.load(mIndex);
+            }
+        }
+    }
+
     @SuppressWarnings("unused")
     private static class DeleteDatabaseTask extends AsyncTask<Void, Void, Boolean> {
 
         private DatabaseTaskListener mListener = null;
+        private final boolean mRelease;
 
-        private DeleteDatabaseTask(@Nullable DatabaseTaskListener listener) {
+        private DeleteDatabaseTask(@Nullable DatabaseTaskListener listener, boolean release) {
             mListener = listener;
+            mRelease = release;
         }
 
         @Override
         protected final Boolean doInBackground(Void... voids) {
-            if (sInstance != null) {
-                SQLiteDatabase database = editDatabase();
-                return database != null && database.isOpen() && database.delete(SEARCHES_TABLE_NAME, "1", null) > 0;
+            SQLiteDatabase database = editDatabase();
+            if (database != null) {
+                SearchStatements statements = editStatements(database);
+                boolean deleted = database.isOpen()
+                        && statements.get(SQL_DELETE_ALL_SEARCHES).executeUpdateDelete() > 0;
+                sEstimatedSearchCount = deleted ? 0 : -1;
+                sDataVersion.incrementAndGet();
+                return deleted;
             }
             return false;
         }
@@ -460,6 +1632,9 @@ class SearchDatabase extends SQLiteOpenHelper {
         @Override
         protected void onPostExecute(Boolean successful) {
             super.onPostExecute(successful);
+            if (mRelease) {
+                release();
+            }
             if (mListener != null) {
                 if (successful != null && successful) {
                     mListener.onDatabaseEditSuccess();
@@ -469,6 +1644,14 @@ class SearchDatabase extends SQLiteOpenHelper {
             }
         }
 
+        @Override
+        protected void onCancelled(Boolean successful) {
+            super.onCancelled(successful);
+            if (mRelease) {
+                release();
+            }
+        }
+
         private void cancel() {
             mListener = null;
             cancel(true);
@@ -476,6 +1659,43 @@ class SearchDatabase extends SQLiteOpenHelper {
 
     }
 
+    /**
+     * Runs tasks one at a time, in the order they were submitted, on any executor.
+     */
+    private static class SerialExecutor implements Executor {
+        private final Executor mExecutor;
+        private final ArrayDeque<Runnable> mTasks = new ArrayDeque<>();
+        private Runnable mActive;
+
+        private SerialExecutor(@NonNull Executor executor) {
+            mExecutor = executor;
+        }
+
+        @Override
+        public synchronized void execute(@NonNull final Runnable runnable) {
+            mTasks.offer(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        runnable.run();
+                    } finally {
+                        scheduleNext();
+                    }
+                }
+            });
+            if (mActive == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            mActive = mTasks.poll();
+            if (mActive != null) {
+                mExecutor.execute(mActive);
+            }
+        }
+    }
+
     @SuppressWarnings("WeakerAccess")
     public interface DatabaseTaskListener {
         void onDatabaseEditSuccess();
@@ -487,4 +1707,41 @@ class SearchDatabase extends SQLiteOpenHelper {
     public interface DatabaseReadSearchesListener {
         void onComplete(@NonNull ArrayList<SearchSuggestion> searches);
     }
+
+    @SuppressWarnings("WeakerAccess")
+    public interface DatabaseImportListener {
+        /**
+         * Called after each chunk of searches has been written.
+         */
+        void onImportProgress(int searchesImported);
+
+        void onImportComplete(int searchesImported);
+
+        /**
+         * Called if the source could not be read. The searches imported before the failure are kept.
+         */
+        void onImportFailure(int searchesImported);
+    }
+
+    @SuppressWarnings("WeakerAccess")
+    public interface DatabaseReadSearchPagesListener {
+        /**
+         * @param searches
+         *         The next page of searches, never empty.
+         *
+         * @return True to read the next page, false to stop.
+         */
+        boolean onPage(@NonNull ArrayList<SearchSuggestion> searches);
+
+        /**
+         * Called once every page has been read, unless reading was stopped or canceled.
+         */
+        void onComplete();
+
+        /**
+         * Called instead of {@link #onComplete()} if the database could not be read. The pages delivered before the
+         * failure are still valid, but the history was not read to its end.
+         */
+        void onFailure();
+    }
 }
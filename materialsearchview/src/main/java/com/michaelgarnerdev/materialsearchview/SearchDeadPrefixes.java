@@ -0,0 +1,91 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * SearchDeadPrefixes remembers typed text that matched no searches. Typing more text at the end only narrows a match,
+ * so any text that starts with a dead key matches nothing either and does not need to be queried. Keys are forgotten
+ * whenever the searches change.
+ * <p>
+ * Must only be used on the main thread.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchDeadPrefixes {
+    private static final int MAX_KEYS = 32;
+
+    private final ArrayDeque<DeadKey> mKeys = new ArrayDeque<>();
+    private int mDataVersion = -1;
+
+    /**
+     * @param key
+     *         The folded typed text.
+     * @param dataVersion
+     *         The current version of the searches, from {@link SearchDatabase#getDataVersion()}.
+     *
+     * @return True if the text is known to match no searches.
+     */
+    boolean isDead(@NonNull String key, @MaterialSearchView.MatchMode int matchMode, int dataVersion) {
+        if (dataVersion != mDataVersion) {
+            mKeys.clear();
+            return false;
+        }
+        for (DeadKey deadKey : mKeys) {
+            if (deadKey.mMatchMode == matchMode && key.startsWith(deadKey.mKey)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remembers text that matched no searches.
+     *
+     * @param dataVersion
+     *         The version of the searches when the query was started.
+     */
+    void add(@NonNull String key, @MaterialSearchView.MatchMode int matchMode, int dataVersion) {
+        if (dataVersion != mDataVersion) {
+            mKeys.clear();
+            mDataVersion = dataVersion;
+        }
+        // a longer key is covered by the new one
+        Iterator<DeadKey> keys = mKeys.iterator();
+        while (keys.hasNext()) {
+            DeadKey deadKey = keys.next();
+            if (deadKey.mMatchMode == matchMode && deadKey.mKey.startsWith(key)) {
+                keys.remove();
+            }
+        }
+        if (mKeys.size() == MAX_KEYS) {
+            mKeys.removeFirst();
+        }
+        mKeys.addLast(new DeadKey(key, matchMode));
+    }
+
+    private static class DeadKey {
+        private final String mKey;
+        private final int mMatchMode;
+
+        private DeadKey(@NonNull String key, int matchMode) {
+            mKey = key;
+            mMatchMode = matchMode;
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.content.res.AssetFileDescriptor;
+import android.content.res.AssetManager;
+import android.support.annotation.NonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * SearchDictionary reads a read-only dictionary of popular searches that ships with an app, for suggestions beneath
+ * the user's own history. The file is memory-mapped and searched in place, so opening it parses nothing but the header
+ * and a lookup allocates nothing but the strings it returns.
+ * <p>
+ * The file holds search terms folded by {@link SearchIndex#toKey(String)}, sorted by their UTF-8 bytes, each with a
+ * weight and the search as it is shown, front-coded in blocks:
+ * <pre>
+ * int     magic, "MSVD"
+ * int     version, 3
+ * int     number of terms
+ * int     terms per block
+ * int     number of blocks
+ * int[]   offset of each block from the start of the file
+ * blocks  first term: varint length, UTF-8 bytes, varint weight, shown search
+ *         other terms: varint bytes shared with the previous term, varint suffix length, suffix bytes, varint weight,
+ *         shown search
+ * shown   varint 0 if the search is shown as its folded term, or else one more than the length of the UTF-8 bytes
+ *         that follow
+ * </pre>
+ * Terms are matched by their folded form, but suggested the way they were written, with their case and accents.
+ * Ints are big-endian and varints use 7 bits per byte, low bits first. {@link #write(Map, OutputStream)} produces the
+ * format. An asset must be stored uncompressed, for example with {@code aaptOptions { noCompress "msvd" }}, to be
+ * mapped.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchDictionary {
+    private static final int MAGIC = 0x4D535644;
+    private static final int VERSION = 3;
+    private static final int HEADER_SIZE = 20;
+    private static final int DEFAULT_BLOCK_SIZE = 16;
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final ByteBuffer mBuffer;
+    private final int mTermCount;
+    private final int mBlockSize;
+    private final int mBlockCount;
+
+    // scratch space reused by every lookup, guarded by this
+    private byte[] mPrefix = new byte[64];
+    private byte[] mTerm = new byte[256];
+    private byte[][] mBest = new byte[0][];
+    private int[] mBestLengths = new int[0];
+    private long[] mBestWeights = new long[0];
+    // where the shown search of each best term starts in the file, and its length plus one, or 0 for the folded term
+    private int[] mBestShownOffsets = new int[0];
+    private int[] mBestShownLengths = new int[0];
+    private int mPosition;
+
+    private SearchDictionary(@NonNull ByteBuffer buffer) throws IOException {
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a search dictionary");
+        }
+        mBuffer = buffer;
+        mTermCount = buffer.getInt(8);
+        mBlockSize = buffer.getInt(12);
+        mBlockCount = buffer.getInt(16);
+    }
+
+    /**
+     * Maps a dictionary that is stored uncompressed in the app's assets.
+     */
+    @NonNull
+    static SearchDictionary open(@NonNull AssetManager assets, @NonNull String assetName) throws IOException {
+        AssetFileDescriptor descriptor = assets.openFd(assetName);
+        try {
+            FileInputStream input = descriptor.createInputStream();
+            try {
+                return new SearchDictionary(input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                        descriptor.getStartOffset(), descriptor.getLength()));
+            } finally {
+                input.close();
+            }
+        } finally {
+            descriptor.close();
+        }
+    }
+
+    /**
+     * Maps a dictionary file.
+     */
+    @NonNull
+    static SearchDictionary open(@NonNull File file) throws IOException {
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            return new SearchDictionary(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        } finally {
+            input.close();
+        }
+    }
+
+    int size() {
+        return mTermCount;
+    }
+
+    /**
+     * Finds the heaviest terms that start with a prefix.
+     *
+     * @param key
+     *         The folded typed text.
+     * @param limit
+     *         The maximum number of terms to find.
+     * @param results
+     *         Receives the terms as they are shown, heaviest first.
+     */
+    synchronized void startingWith(@NonNull String key, int limit, @NonNull List<String> results) {
+        if (limit <= 0 || mTermCount == 0) {
+            return;
+        }
+        int prefixLength = encode(key);
+        ensureBestCapacity(limit);
+        int count = 0;
+        int index = findFirstBlock(prefixLength) * mBlockSize;
+        int termLength;
+        for (; index < mTermCount; index++) {
+            if (index % mBlockSize == 0) {
+                mPosition = getBlockOffset(index / mBlockSize);
+                termLength = readSuffix(0);
+            } else {
+                termLength = readSuffix(readVarint());
+            }
+            long weight = readVarint();
+            int shownLength = readVarint();
+            int shownOffset = mPosition;
+            if (shownLength > 0) {
+                mPosition += shownLength - 1;
+            }
+            int comparison = comparePrefix(mTerm, termLength, prefixLength);
+            if (comparison > 0) {
+                break;
+            } else if (comparison < 0) {
+                continue;
+            }
+            if (count < limit || weight > mBestWeights[count - 1]) {
+                int position = count < limit ? count++ : count - 1;
+                // reuse the buffer of the term that drops out
+                byte[] slot = mBest[position];
+                int slotPosition = position;
+                while (position > 0 && mBestWeights[position - 1] < weight) {
+                    position--;
+                }
+                System.arraycopy(mBest, position, mBest, position + 1, slotPosition - position);
+                System.arraycopy(mBestLengths, position, mBestLengths, position + 1, slotPosition - position);
+                System.arraycopy(mBestWeights, position, mBestWeights, position + 1, slotPosition - position);
+                System.arraycopy(mBestShownOffsets, position, mBestShownOffsets, position + 1, slotPosition - position);
+                System.arraycopy(mBestShownLengths, position, mBestShownLengths, position + 1, slotPosition - position);
+                if (slot == null || slot.length < termLength) {
+                    slot = new byte[Math.max(termLength, 32)];
+                }
+                System.arraycopy(mTerm, 0, slot, 0, termLength);
+                mBest[position] = slot;
+                mBestLengths[position] = termLength;
+                mBestWeights[position] = weight;
+                mBestShownOffsets[position] = shownOffset;
+                mBestShownLengths[position] = shownLength;
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            if (mBestShownLengths[i] == 0) {
+                results.add(new String(mBest[i], 0, mBestLengths[i], UTF_8));
+            } else {
+                // the term buffer is free once the lookup is done
+                mPosition = mBestShownOffsets[i];
+                int length = readSuffix(0, mBestShownLengths[i] - 1);
+                results.add(new String(mTerm, 0, length, UTF_8));
+            }
+        }
+    }
+
+    /**
+     * Finds the block the first term starting with the encoded prefix can be in: the last block whose first term
+     * sorts before the prefix.
+     */
+    private int findFirstBlock(int prefixLength) {
+        int low = 0;
+        int high = mBlockCount - 1;
+        while (low < high) {
+            int middle = (low + high + 1) >>> 1;
+            mPosition = getBlockOffset(middle);
+            int termLength = readSuffix(0);
+            if (comparePrefix(mTerm, termLength, prefixLength) < 0) {
+                low = middle;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Less than zero if the term sorts before every term starting with the prefix, zero if it starts with the
+     * prefix and more than zero if it sorts after them.
+     */
+    private int comparePrefix(@NonNull byte[] term, int termLength, int prefixLength) {
+        int length = Math.min(termLength, prefixLength);
+        for (int i = 0; i < length; i++) {
+            int difference = (term[i] & 0xff) - (mPrefix[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return termLength < prefixLength ? -1 : 0;
+    }
+
+    private int getBlockOffset(int block) {
+        return mBuffer.getInt(HEADER_SIZE + block * 4);
+    }
+
+    /**
+     * Reads a term that shares its first bytes with the term read before it into {@link #mTerm}.
+     *
+     * @return The length of the term.
+     */
+    private int readSuffix(int shared) {
+        return readSuffix(shared, readVarint());
+    }
+
+    private int readSuffix(int shared, int suffixLength) {
+        int length = shared + suffixLength;
+        if (length > mTerm.length) {
+            mTerm = Arrays.copyOf(mTerm, Math.max(length, mTerm.length * 2));
+        }
+        for (int i = shared; i < length; i++) {
+            mTerm[i] = mBuffer.get(mPosition++);
+        }
+        return length;
+    }
+
+    private int readVarint() {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = mBuffer.get(mPosition++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Encodes a key as UTF-8 into {@link #mPrefix}.
+     *
+     * @return The number of bytes.
+     */
+    private int encode(@NonNull String key) {
+        if (mPrefix.length < key.length() * 3) {
+            mPrefix = new byte[key.length() * 3];
+        }
+        int length = 0;
+        for (int i = 0; i < key.length(); i++) {
+            int c = key.charAt(i);
+            if (Character.isHighSurrogate((char) c) && i + 1 < key.length()
+                    && Character.isLowSurrogate(key.charAt(i + 1))) {
+                c = Character.toCodePoint((char) c, key.charAt(++i));
+            }
+            if (c < 0x80) {
+                mPrefix[length++] = (byte) c;
+            } else if (c < 0x800) {
+                mPrefix[length++] = (byte) (0xc0 | (c >> 6));
+                mPrefix[length++] = (byte) (0x80 | (c & 0x3f));
+            } else if (c < 0x10000) {
+                mPrefix[length++] = (byte) (0xe0 | (c >> 12));
+                mPrefix[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                mPrefix[length++] = (byte) (0x80 | (c & 0x3f));
+            } else {
+                mPrefix[length++] = (byte) (0xf0 | (c >> 18));
+                mPrefix[length++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+                mPrefix[length++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+                mPrefix[length++] = (byte) (0x80 | (c & 0x3f));
+            }
+        }
+        return length;
+    }
+
+    private void ensureBestCapacity(int limit) {
+        if (mBest.length < limit) {
+            mBest = Arrays.copyOf(mBest, limit);
+            mBestLengths = new int[limit];
+            mBestWeights = new long[limit];
+            mBestShownOffsets = new int[limit];
+            mBestShownLengths = new int[limit];
+        }
+    }
+
+    /**
+     * Writes a dictionary, for build tools that compile against the library.
+     *
+     * @param weights
+     *         Each search with its weight. Searches are folded, and the weights of searches that fold the same are
+     *         added up. They are shown as the heaviest of them is written.
+     */
+    static void write(@NonNull Map<String, Long> weights, @NonNull OutputStream output) throws IOException {
+        TreeMap<byte[], Term> terms = new TreeMap<>(new Comparator<byte[]>() {
+            @Override
+            public int compare(byte[] first, byte[] second) {
+                int length = Math.min(first.length, second.length);
+                for (int i = 0; i < length; i++) {
+                    int difference = (first[i] & 0xff) - (second[i] & 0xff);
+                    if (difference != 0) {
+                        return difference;
+                    }
+                }
+                return first.length - second.length;
+            }
+        });
+        for (Map.Entry<String, Long> entry : weights.entrySet()) {
+            byte[] key = SearchIndex.toKey(entry.getKey()).getBytes(UTF_8);
+            Term term = terms.get(key);
+            if (term == null) {
+                terms.put(key, new Term(entry.getKey(), entry.getValue()));
+            } else {
+                term.add(entry.getKey(), entry.getValue());
+            }
+        }
+        int blockCount = (terms.size() + DEFAULT_BLOCK_SIZE - 1) / DEFAULT_BLOCK_SIZE;
+        ArrayList<Integer> offsets = new ArrayList<>(blockCount);
+        ByteArrayOutputStream blocks = new ByteArrayOutputStream();
+        int dataStart = HEADER_SIZE + blockCount * 4;
+        byte[] previous = null;
+        int index = 0;
+        for (Map.Entry<byte[], Term> entry : terms.entrySet()) {
+            byte[] term = entry.getKey();
+            if (index % DEFAULT_BLOCK_SIZE == 0) {
+                offsets.add(dataStart + blocks.size());
+                writeVarint(blocks, term.length);
+                blocks.write(term);
+            } else {
+                int shared = 0;
+                while (shared < previous.length && shared < term.length && previous[shared] == term[shared]) {
+                    shared++;
+                }
+                writeVarint(blocks, shared);
+                writeVarint(blocks, term.length - shared);
+                blocks.write(term, shared, term.length - shared);
+            }
+            writeVarint(blocks, Math.max(0, Math.min(Integer.MAX_VALUE, entry.getValue().mWeight)));
+            byte[] shown = entry.getValue().mShown.getBytes(UTF_8);
+            if (Arrays.equals(shown, term)) {
+                writeVarint(blocks, 0);
+            } else {
+                writeVarint(blocks, shown.length + 1);
+                blocks.write(shown);
+            }
+            previous = term;
+            index++;
+        }
+        DataOutputStream data = new DataOutputStream(output);
+        data.writeInt(MAGIC);
+        data.writeInt(VERSION);
+        data.writeInt(terms.size());
+        data.writeInt(DEFAULT_BLOCK_SIZE);
+        data.writeInt(blockCount);
+        for (int offset : offsets) {
+            data.writeInt(offset);
+        }
+        blocks.writeTo(data);
+        data.flush();
+    }
+
+    /**
+     * The searches that fold to the same term, added up while writing.
+     */
+    private static class Term {
+        private String mShown;
+        private long mShownWeight;
+        private long mWeight;
+
+        private Term(@NonNull String search, long weight) {
+            mShown = search;
+            mShownWeight = weight;
+            mWeight = weight;
+        }
+
+        private void add(@NonNull String search, long weight) {
+            // ties go to the search that sorts first, so the output does not depend on the order of the map
+            if (weight > mShownWeight || (weight == mShownWeight && search.compareTo(mShown) < 0)) {
+                mShown = search;
+                mShownWeight = weight;
+            }
+            mWeight += weight;
+        }
+    }
+
+    private static void writeVarint(@NonNull OutputStream output, long value) throws IOException {
+        while (value >= 0x80) {
+            output.write((int) (value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        output.write((int) value);
+    }
+}
@@ -0,0 +1,946 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.os.Build.VERSION;
+import android.os.Build.VERSION_CODES;
+import android.support.annotation.NonNull;
+import android.support.annotation.RequiresApi;
+
+import java.text.Normalizer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * SearchIndex mirrors the searches table in memory as a prefix trie so suggestions can be filtered on every keystroke
+ * without a round trip to SQLite.
+ * <p>
+ * It also keeps a {@link SearchTokenIndex} of the words of every search, so that word prefix queries are answered
+ * without SQLite too.
+ * <p>
+ * From Lollipop on, a query with a great many candidates is ranked in parts on a {@link ForkJoinPool}, each part
+ * keeping its own best searches, which are then merged.
+ * <p>
+ * Queries never lock: they read the current {@link Snapshot}, which is published through a single volatile field and
+ * never changes afterwards. Writers take turns, apply a whole batch to a copy of the paths they change and then
+ * publish the new snapshot, so a query sees either all of a batch or none of it.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchIndex {
+    // removed searches left in the token index before it is rebuilt
+    private static final int MIN_REBUILD_REMOVALS = 256;
+    // candidates above which ranking is split across cores
+    private static final int PARALLEL_RANKING_THRESHOLD = 32768;
+    // candidates that one part of a parallel ranking takes on without splitting further
+    private static final int PARALLEL_RANKING_PART_SIZE = 8192;
+    // searches above which a query may take longer than a frame to rank
+    private static final int BACKGROUND_RANKING_THRESHOLD = 32768;
+    // searches by id are kept in chunks of 512, so an edit only copies the chunks it changes
+    private static final int ID_CHUNK_SHIFT = 9;
+    private static final int ID_CHUNK_MASK = (1 << ID_CHUNK_SHIFT) - 1;
+    private static final double FRECENCY_HALF_LIFE = 14 * 24 * 60 * 60 * 1000d;
+    private static final double FRECENCY_TIME_CONSTANT = FRECENCY_HALF_LIFE / Math.log(2);
+
+    // the number of threads to rank with, or 0 for one per core
+    private static volatile int sRankingParallelism = 0;
+
+    // written only while holding the lock, read without it
+    private volatile Snapshot mSnapshot = Snapshot.EMPTY;
+    private volatile boolean mLoaded = false;
+
+    boolean isLoaded() {
+        return mLoaded;
+    }
+
+    void setLoaded(boolean loaded) {
+        mLoaded = loaded;
+    }
+
+    int size() {
+        return mSnapshot.mSize;
+    }
+
+    /**
+     * @return True if the index holds so many searches that a query should be ranked off the main thread.
+     */
+    boolean ranksInBackground() {
+        return mSnapshot.mSize > BACKGROUND_RANKING_THRESHOLD;
+    }
+
+    /**
+     * Sets how many threads rank a large query, which tests use to measure how ranking scales.
+     *
+     * @param parallelism
+     *         The number of threads, or 0 for one per core.
+     */
+    static void setRankingParallelism(int parallelism) {
+        sRankingParallelism = Math.max(parallelism, 0);
+    }
+
+    private static int getRankingParallelism() {
+        int parallelism = sRankingParallelism;
+        // the number of cores is read on every query, as it can change while the app runs
+        return parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+    }
+
+    synchronized void clear() {
+        mSnapshot = Snapshot.EMPTY;
+    }
+
+    /**
+     * Adds searches to the index as they were loaded from the database. A term that is already present is left as it
+     * is.
+     *
+     * @param searchSuggestions
+     *         The searches to add.
+     * @param frecencies
+     *         The stored frecency of each search.
+     */
+    synchronized void load(@NonNull List<SearchSuggestion> searchSuggestions, @NonNull double[] frecencies) {
+        Edit edit = new Edit(mSnapshot);
+        for (int i = 0; i < searchSuggestions.size(); i++) {
+            SearchSuggestion search = searchSuggestions.get(i);
+            edit.put(search, search.getDateMillis(), frecencies[i], false);
+        }
+        mSnapshot = edit.publish();
+    }
+
+    /**
+     * Records searches the same way the database does. A new term is added, while a term that is already present has
+     * its date moved forward and its frecency increased. Readers see either none or all of the searches.
+     *
+     * @param searchSuggestions
+     *         The searches to record.
+     */
+    synchronized void add(@NonNull Iterable<SearchSuggestion> searchSuggestions) {
+        Edit edit = new Edit(mSnapshot);
+        for (SearchSuggestion search : searchSuggestions) {
+            edit.put(search, search.getDateMillis(), search.getDateMillis(), true);
+        }
+        mSnapshot = edit.publish();
+    }
+
+    /**
+     * Removes searches from the index. Readers see either none or all of them removed.
+     *
+     * @param terms
+     *         The exact search terms to remove.
+     */
+    synchronized void remove(@NonNull Iterable<String> terms) {
+        Edit edit = new Edit(mSnapshot);
+        for (String term : terms) {
+            edit.remove(term);
+        }
+        mSnapshot = edit.publish();
+    }
+
+    /**
+     * Finds the best ranked searches whose key starts with the key of the given prefix.
+     *
+     * @param prefix
+     *         The prefix typed by the user.
+     * @param limit
+     *         The maximum number of searches to return.
+     * @param rankingMode
+     *         Whether to rank by recency or by frecency.
+     *
+     * @return The matching searches, best ranked first.
+     */
+    @NonNull
+    ArrayList<SearchSuggestion> startingWith(@NonNull String prefix, int limit,
+                                             @MaterialSearchView.RankingMode int rankingMode) {
+        ArrayList<SearchSuggestion> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        Node node = mSnapshot.mRoot;
+        String key = toKey(prefix);
+        for (int i = 0; i < key.length() && node != null; i++) {
+            node = node.getChild(key.charAt(i));
+        }
+        if (node == null) {
+            return results;
+        }
+        boolean byFrecency = rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY;
+        if (canRankInParallel(node.mSubtreeSize)) {
+            return toSuggestions(ParallelRanking.rankSubtree(node, limit, byFrecency));
+        }
+        SearchTopK<Entry> best = new SearchTopK<>(limit);
+        rankSubtree(node, byFrecency, best);
+        return toSuggestions(best);
+    }
+
+    private static void rankSubtree(@NonNull Node node, boolean byFrecency, @NonNull SearchTopK<Entry> best) {
+        rankSubtree(node, 0, byFrecency, best);
+    }
+
+    /**
+     * Offers the searches at and below a node, visiting the nodes with the best scores below them first. The walk
+     * stops as soon as the best score left below any node could not be kept, so a short prefix only visits the few
+     * branches that hold its best searches rather than every search starting with it.
+     */
+    private static void rankSubtree(@NonNull Node node, int tier, boolean byFrecency,
+                                    @NonNull SearchTopK<Entry> best) {
+        PriorityQueue<Node> queue = new PriorityQueue<>(16, byFrecency ? BestScoreFirst.BY_FRECENCY
+                : BestScoreFirst.BY_DATE);
+        queue.add(node);
+        while (!queue.isEmpty()) {
+            Node current = queue.poll();
+            if (!best.wouldKeep(tier, current.getBestScore(byFrecency))) {
+                // no node left has a better score below it
+                return;
+            }
+            for (Entry entry : current.mEntries) {
+                best.offer(entry, tier, byFrecency ? entry.mFrecency : entry.mDate);
+            }
+            for (int i = 0; i < current.mChildCount; i++) {
+                Node child = current.mChildren[i];
+                if (best.wouldKeep(tier, child.getBestScore(byFrecency))) {
+                    queue.add(child);
+                }
+            }
+        }
+    }
+
+    private static boolean canRankInParallel(int candidates) {
+        return candidates > PARALLEL_RANKING_THRESHOLD && VERSION.SDK_INT >= VERSION_CODES.LOLLIPOP
+                && getRankingParallelism() > 1;
+    }
+
+    @NonNull
+    private static ArrayList<SearchSuggestion> toSuggestions(@NonNull SearchTopK<Entry> best) {
+        ArrayList<SearchSuggestion> results = new ArrayList<>(best.size());
+        for (Entry entry : best.toBestFirst()) {
+            results.add(entry.mSuggestion);
+        }
+        return results;
+    }
+
+    /**
+     * Finds the best ranked searches that start with the given prefix give or take a few typos. The distance of a
+     * search is the fewest insertions, deletions, substitutions and swaps of adjacent characters that turn the prefix
+     * into the start of the search. Up to {@link #getMaxTypos(int)} are allowed, and searches with fewer typos rank
+     * first, so exact prefix matches always come before fuzzy ones.
+     * <p>
+     * The trie is walked depth first with one row of the edit distance table per node, which is a Levenshtein
+     * automaton run over the trie. A branch is left as soon as no row below it can come within the allowed distance.
+     *
+     * @param prefix
+     *         The prefix typed by the user.
+     * @param limit
+     *         The maximum number of searches to return.
+     * @param rankingMode
+     *         Whether to rank by recency or by frecency among searches with as many typos.
+     *
+     * @return The matching searches, best ranked first.
+     */
+    @NonNull
+    ArrayList<SearchSuggestion> fuzzyStartingWith(@NonNull String prefix, int limit,
+                                                  @MaterialSearchView.RankingMode int rankingMode) {
+        ArrayList<SearchSuggestion> results = new ArrayList<>();
+        if (limit <= 0) {
+            return results;
+        }
+        String key = toKey(prefix);
+        FuzzySearch search = new FuzzySearch(key, getMaxTypos(key.length()), limit,
+                rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY);
+        int[] row = search.getRow(0);
+        for (int i = 0; i <= key.length(); i++) {
+            row[i] = i;
+        }
+        search.walk(mSnapshot.mRoot, 1, (char) 0, key.length());
+        return toSuggestions(search.mBest);
+    }
+
+    /**
+     * @return How many typos are allowed in a prefix of the given length. Short prefixes allow none, as almost anything
+     * would match them.
+     */
+    static int getMaxTypos(int length) {
+        return length < 3 ? 0 : length < 6 ? 1 : 2;
+    }
+
+    /**
+     * Finds the best ranked searches that match the given text word by word, as {@link SearchDatabase} matches it in
+     * token prefix and full text mode.
+     *
+     * @param text
+     *         The text typed by the user.
+     * @param limit
+     *         The maximum number of searches to return.
+     * @param matchMode
+     *         Either {@link MaterialSearchView#MATCH_MODE_TOKEN_PREFIX} or
+     *         {@link MaterialSearchView#MATCH_MODE_FULL_TEXT}.
+     * @param rankingMode
+     *         Whether to rank by recency or by frecency.
+     *
+     * @return The matching searches, best ranked first.
+     */
+    @NonNull
+    ArrayList<SearchSuggestion> withWordsStartingWith(@NonNull String text, int limit,
+                                                      @MaterialSearchView.MatchMode int matchMode,
+                                                      @MaterialSearchView.RankingMode int rankingMode) {
+        ArrayList<SearchSuggestion> results = new ArrayList<>();
+        String key = toKey(text);
+        List<String> tokens = SearchTokenizer.getTokens(key);
+        if (limit <= 0 || tokens.isEmpty()) {
+            return results;
+        }
+        Snapshot snapshot = mSnapshot;
+        int[] ids = snapshot.mTokens.find(tokens, matchMode == MaterialSearchView.MATCH_MODE_TOKEN_PREFIX);
+        WordMatch match = new WordMatch(snapshot, ids, key, tokens, matchMode,
+                rankingMode == MaterialSearchView.RANKING_MODE_FRECENCY);
+        if (canRankInParallel(ids.length)) {
+            return toSuggestions(ParallelRanking.rankWords(match, limit));
+        }
+        SearchTopK<Entry> best = new SearchTopK<>(limit);
+        match.rank(0, ids.length, best);
+        return toSuggestions(best);
+    }
+
+    /**
+     * Adds a search performed at the given date to a frecency. Frecency is kept as T * ln(sum of e^(date / T)) over
+     * every time the search was performed, with T derived from {@link #FRECENCY_HALF_LIFE}. At any later time that
+     * orders searches the same way as their hit counts decayed by the half life, so the stored value never needs to be
+     * recomputed as time passes and can be indexed. A search performed once has a frecency equal to its date, and two
+     * frecencies for the same term are combined the same way.
+     *
+     * @return The new frecency.
+     */
+    static double addToFrecency(double frecency, double date) {
+        double high = Math.max(frecency, date);
+        double low = Math.min(frecency, date);
+        return high + FRECENCY_TIME_CONSTANT * Math.log1p(Math.exp((low - high) / FRECENCY_TIME_CONSTANT));
+    }
+
+    /**
+     * Folds a search term into the key it is stored, indexed and matched by. The term is decomposed with NFKD, its
+     * combining marks are dropped and each character is case folded on its own, so that "Caf&eacute;", "CAFE" and
+     * "cafe" share a key whatever the default locale is, and dotted and dotless i fold alike. Folding text that was
+     * typed one character further only extends its key.
+     */
+    @NonNull
+    static String toKey(@NonNull String term) {
+        int length = term.length();
+        int i = 0;
+        while (i < length && term.charAt(i) < 0x80) {
+            i++;
+        }
+        if (i == length) {
+            // plain ASCII has nothing to decompose
+            char[] key = null;
+            for (int j = 0; j < length; j++) {
+                char c = term.charAt(j);
+                if (c >= 'A' && c <= 'Z') {
+                    if (key == null) {
+                        key = term.toCharArray();
+                    }
+                    key[j] = (char) (c + ('a' - 'A'));
+                }
+            }
+            return key != null ? new String(key) : term;
+        }
+        String decomposed = Normalizer.normalize(term, Normalizer.Form.NFKD);
+        StringBuilder key = new StringBuilder(decomposed.length());
+        for (int j = 0; j < decomposed.length(); ) {
+            int codePoint = decomposed.codePointAt(j);
+            j += Character.charCount(codePoint);
+            switch (Character.getType(codePoint)) {
+                case Character.NON_SPACING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                    break;
+                default:
+                    codePoint = Character.toLowerCase(Character.toUpperCase(codePoint));
+                    if (codePoint == '\u00df') {
+                        key.append("ss");
+                    } else {
+                        key.appendCodePoint(codePoint);
+                    }
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * The state of one fuzzy lookup: the rows of the edit distance table, one per depth and reused from node to node,
+     * and the best searches found so far.
+     */
+    private static class FuzzySearch {
+        private final String mKey;
+        private final int mMaxTypos;
+        private final boolean mByFrecency;
+        private int[][] mRows = new int[16][];
+        // ranked by typos, then by score
+        private final SearchTopK<Entry> mBest;
+
+        private FuzzySearch(@NonNull String key, int maxTypos, int limit, boolean byFrecency) {
+            mKey = key;
+            mMaxTypos = maxTypos;
+            mByFrecency = byFrecency;
+            mBest = new SearchTopK<>(limit);
+        }
+
+        @NonNull
+        private int[] getRow(int depth) {
+            if (depth >= mRows.length) {
+                mRows = Arrays.copyOf(mRows, Math.max(depth + 1, mRows.length * 2));
+            }
+            if (mRows[depth] == null) {
+                mRows[depth] = new int[mKey.length() + 1];
+            }
+            return mRows[depth];
+        }
+
+        /**
+         * Visits the children of a node whose row is at depth - 1.
+         *
+         * @param parentKey
+         *         The character leading to the node, for spotting swapped characters.
+         * @param typos
+         *         The fewest typos of a prefix of the path to the node, more than {@link #mMaxTypos} if none matched.
+         */
+        private void walk(@NonNull Node node, int depth, char parentKey, int typos) {
+            int length = mKey.length();
+            int[] previous = mRows[depth - 1];
+            // a swap can still lower the row after next by one
+            int lowestPrevious = Integer.MAX_VALUE;
+            for (int value : previous) {
+                lowestPrevious = Math.min(lowestPrevious, value);
+            }
+            for (int child = 0; child < node.mChildCount; child++) {
+                Node next = node.mChildren[child];
+                if (!mBest.wouldKeep(0, next.getBestScore(mByFrecency))) {
+                    // nothing below could be kept even without typos
+                    continue;
+                }
+                char c = node.mKeys[child];
+                int[] beforePrevious = depth > 1 ? mRows[depth - 2] : null;
+                int[] row = getRow(depth);
+                row[0] = depth;
+                int lowest = row[0];
+                for (int i = 1; i <= length; i++) {
+                    char typed = mKey.charAt(i - 1);
+                    int distance = Math.min(Math.min(previous[i], row[i - 1]) + 1,
+                            previous[i - 1] + (typed == c ? 0 : 1));
+                    if (beforePrevious != null && i > 1 && typed == parentKey && mKey.charAt(i - 2) == c) {
+                        distance = Math.min(distance, beforePrevious[i - 2] + 1);
+                    }
+                    row[i] = distance;
+                    lowest = Math.min(lowest, distance);
+                }
+                int childTypos = Math.min(typos, row[length]);
+                if (childTypos <= mMaxTypos) {
+                    offerAll(next.mEntries, childTypos);
+                }
+                if (lowest <= mMaxTypos || lowestPrevious < mMaxTypos) {
+                    walk(next, depth + 1, c, childTypos);
+                } else if (childTypos <= mMaxTypos) {
+                    collect(next, childTypos);
+                }
+            }
+        }
+
+        /**
+         * Offers every search below a node, none of which can have fewer typos.
+         */
+        private void collect(@NonNull Node node, int typos) {
+            for (int i = 0; i < node.mChildCount; i++) {
+                rankSubtree(node.mChildren[i], typos, mByFrecency, mBest);
+            }
+        }
+
+        private void offerAll(@NonNull Entry[] entries, int typos) {
+            for (Entry entry : entries) {
+                mBest.offer(entry, typos, mByFrecency ? entry.mFrecency : entry.mDate);
+            }
+        }
+    }
+
+    /**
+     * The candidates of a word prefix query, the searches holding every typed word, and how to rank them.
+     */
+    private static class WordMatch {
+        private final Snapshot mSnapshot;
+        private final int[] mIds;
+        private final String mKey;
+        private final List<String> mTokens;
+        private final int mMatchMode;
+        // every candidate has all of the words, but a phrase also needs them in order
+        private final boolean mCheckOrder;
+        private final boolean mByFrecency;
+
+        private WordMatch(@NonNull Snapshot snapshot, @NonNull int[] ids, @NonNull String key,
+                          @NonNull List<String> tokens, int matchMode, boolean byFrecency) {
+            mSnapshot = snapshot;
+            mIds = ids;
+            mKey = key;
+            mTokens = tokens;
+            mMatchMode = matchMode;
+            mCheckOrder = matchMode == MaterialSearchView.MATCH_MODE_TOKEN_PREFIX && tokens.size() > 1;
+            mByFrecency = byFrecency;
+        }
+
+        /**
+         * Offers the matching candidates between the given positions.
+         */
+        private void rank(int from, int to, @NonNull SearchTopK<Entry> best) {
+            for (int i = from; i < to; i++) {
+                Entry entry = mSnapshot.getEntry(mIds[i]);
+                if (entry != null && (!mCheckOrder
+                        || SearchTokenizer.matches(entry.mSuggestion.getSearchKey(), mKey, mTokens, mMatchMode))) {
+                    best.offer(entry, mByFrecency ? entry.mFrecency : entry.mDate);
+                }
+            }
+        }
+    }
+
+    /**
+     * Ranks candidates in parts on a pool with a thread per core. The parts all read the snapshot the query started
+     * from, which never changes.
+     */
+    @RequiresApi(api = VERSION_CODES.LOLLIPOP)
+    private static class ParallelRanking {
+        private static ForkJoinPool sPool;
+
+        private static synchronized ForkJoinPool getPool() {
+            int parallelism = getRankingParallelism();
+            if (sPool == null || sPool.getParallelism() != parallelism) {
+                // the old pool is not shut down, as a query may still be about to use it, and its idle threads end
+                // on their own
+                sPool = new ForkJoinPool(parallelism);
+            }
+            return sPool;
+        }
+
+        @NonNull
+        private static SearchTopK<Entry> rankSubtree(@NonNull Node node, int limit, boolean byFrecency) {
+            return getPool().invoke(new SubtreeTask(new Node[]{node}, 0, 1, limit, byFrecency));
+        }
+
+        @NonNull
+        private static SearchTopK<Entry> rankWords(@NonNull WordMatch match, int limit) {
+            return getPool().invoke(new WordTask(match, 0, match.mIds.length, limit));
+        }
+    }
+
+    /**
+     * Ranks the subtrees below a run of sibling nodes, split into parts of about the same number of searches.
+     */
+    @RequiresApi(api = VERSION_CODES.LOLLIPOP)
+    private static class SubtreeTask extends RecursiveTask<SearchTopK<Entry>> {
+        private final Node[] mNodes;
+        private final int mFrom;
+        private final int mTo;
+        private final int mLimit;
+        private final boolean mByFrecency;
+
+        private SubtreeTask(@NonNull Node[] nodes, int from, int to, int limit, boolean byFrecency) {
+            mNodes = nodes;
+            mFrom = from;
+            mTo = to;
+            mLimit = limit;
+            mByFrecency = byFrecency;
+        }
+
+        @Override
+        protected SearchTopK<Entry> compute() {
+            int size = 0;
+            for (int i = mFrom; i < mTo; i++) {
+                size += mNodes[i].mSubtreeSize;
+            }
+            if (size <= PARALLEL_RANKING_PART_SIZE) {
+                SearchTopK<Entry> best = new SearchTopK<>(mLimit);
+                for (int i = mFrom; i < mTo; i++) {
+                    rankSubtree(mNodes[i], mByFrecency, best);
+                }
+                return best;
+            }
+            if (mTo - mFrom == 1) {
+                // too large for one part, so split the children instead
+                Node node = mNodes[mFrom];
+                SearchTopK<Entry> best = new SubtreeTask(node.mChildren, 0, node.mChildCount, mLimit, mByFrecency)
+                        .compute();
+                for (Entry entry : node.mEntries) {
+                    best.offer(entry, mByFrecency ? entry.mFrecency : entry.mDate);
+                }
+                return best;
+            }
+            int middle = mFrom + 1;
+            int left = mNodes[mFrom].mSubtreeSize;
+            while (middle < mTo - 1 && left + mNodes[middle].mSubtreeSize <= size / 2) {
+                left += mNodes[middle++].mSubtreeSize;
+            }
+            SubtreeTask first = new SubtreeTask(mNodes, mFrom, middle, mLimit, mByFrecency);
+            first.fork();
+            SearchTopK<Entry> best = new SubtreeTask(mNodes, middle, mTo, mLimit, mByFrecency).compute();
+            best.offerAll(first.join());
+            return best;
+        }
+    }
+
+    /**
+     * Ranks a range of the candidates of a word prefix query, split in halves.
+     */
+    @RequiresApi(api = VERSION_CODES.LOLLIPOP)
+    private static class WordTask extends RecursiveTask<SearchTopK<Entry>> {
+        private final WordMatch mMatch;
+        private final int mFrom;
+        private final int mTo;
+        private final int mLimit;
+
+        private WordTask(@NonNull WordMatch match, int from, int to, int limit) {
+            mMatch = match;
+            mFrom = from;
+            mTo = to;
+            mLimit = limit;
+        }
+
+        @Override
+        protected SearchTopK<Entry> compute() {
+            if (mTo - mFrom <= PARALLEL_RANKING_PART_SIZE) {
+                SearchTopK<Entry> best = new SearchTopK<>(mLimit);
+                mMatch.rank(mFrom, mTo, best);
+                return best;
+            }
+            int middle = (mFrom + mTo) >>> 1;
+            WordTask first = new WordTask(mMatch, mFrom, middle, mLimit);
+            first.fork();
+            SearchTopK<Entry> best = new WordTask(mMatch, middle, mTo, mLimit).compute();
+            best.offerAll(first.join());
+            return best;
+        }
+    }
+
+    /**
+     * One version of the index. Nothing in a snapshot changes once it is published, so it can be read from any thread
+     * without locking.
+     */
+    private static class Snapshot {
+        private static final Snapshot EMPTY = new Snapshot(new Node(null), 0, SearchTokenIndex.EMPTY, new Entry[0][],
+                0);
+
+        private final Node mRoot;
+        private final int mSize;
+        private final SearchTokenIndex mTokens;
+        // every search by its id in the token index, with removed searches left null
+        private final Entry[][] mEntriesById;
+        private final int mNextId;
+
+        private Snapshot(@NonNull Node root, int size, @NonNull SearchTokenIndex tokens, @NonNull Entry[][] entriesById,
+                         int nextId) {
+            mRoot = root;
+            mSize = size;
+            mTokens = tokens;
+            mEntriesById = entriesById;
+            mNextId = nextId;
+        }
+
+        private Entry getEntry(int id) {
+            return mEntriesById[id >>> ID_CHUNK_SHIFT][id & ID_CHUNK_MASK];
+        }
+    }
+
+    /**
+     * A batch of changes to a snapshot, which ends in a new snapshot. The path to each changed node is copied, except
+     * for nodes this edit already copied or created, which nobody else can see yet and are changed in place.
+     */
+    private static class Edit {
+        private final Object mOwner = new Object();
+        private Node mRoot;
+        private int mSize;
+        private SearchTokenIndex mTokens;
+        private Entry[][] mEntriesById;
+        // the chunks of searches by id that were copied by this edit
+        private boolean[] mOwnedChunks;
+        private int mNextId;
+
+        private Edit(@NonNull Snapshot snapshot) {
+            mRoot = snapshot.mRoot;
+            mSize = snapshot.mSize;
+            mTokens = snapshot.mTokens;
+            mEntriesById = snapshot.mEntriesById.clone();
+            mOwnedChunks = new boolean[mEntriesById.length];
+            mNextId = snapshot.mNextId;
+        }
+
+        /**
+         * @param record
+         *         True to move the date of a term that is already present forward and increase its frecency, false to
+         *         leave it as it is.
+         */
+        private void put(@NonNull SearchSuggestion searchSuggestion, long date, double frecency, boolean record) {
+            String key = searchSuggestion.getSearchKey();
+            Node node = mRoot;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.getChild(key.charAt(i));
+            }
+            Entry entry = node != null ? node.find(searchSuggestion.getSearchTerm()) : null;
+            if (entry == null) {
+                entry = new Entry(searchSuggestion, mNextId++, date, frecency);
+                ownPath(key, 1, entry).addEntry(entry);
+                setEntry(entry.mId, entry);
+                mTokens = mTokens.add(mOwner, entry.mId, SearchTokenizer.getTokens(key));
+                mSize++;
+            } else if (record) {
+                Entry updated = new Entry(date > entry.mDate ? searchSuggestion : entry.mSuggestion, entry.mId,
+                        Math.max(date, entry.mDate), addToFrecency(entry.mFrecency, date));
+                ownPath(key, 0, updated).replaceEntry(entry, updated);
+                setEntry(updated.mId, updated);
+            }
+        }
+
+        private void remove(@NonNull String term) {
+            String key = toKey(term);
+            Node node = mRoot;
+            for (int i = 0; i < key.length() && node != null; i++) {
+                node = node.getChild(key.charAt(i));
+            }
+            Entry entry = node != null ? node.find(term) : null;
+            if (entry != null) {
+                ownPath(key, -1, null).replaceEntry(entry, null);
+                setEntry(entry.mId, null);
+                mSize--;
+            }
+        }
+
+        @NonNull
+        private Snapshot publish() {
+            if (mNextId - mSize > Math.max(MIN_REBUILD_REMOVALS, mSize)) {
+                return rebuild();
+            }
+            return new Snapshot(mRoot, mSize, mTokens, mEntriesById, mNextId);
+        }
+
+        /**
+         * Builds the index again from its searches, which drops the ids of removed searches from the token index.
+         */
+        @NonNull
+        private Snapshot rebuild() {
+            Edit edit = new Edit(Snapshot.EMPTY);
+            ArrayDeque<Node> stack = new ArrayDeque<>();
+            stack.push(mRoot);
+            while (!stack.isEmpty()) {
+                Node current = stack.pop();
+                // each search is put first in its node, so put them last to first to keep their order
+                for (int i = current.mEntries.length - 1; i >= 0; i--) {
+                    Entry entry = current.mEntries[i];
+                    edit.put(entry.mSuggestion, entry.mDate, entry.mFrecency, false);
+                }
+                for (int i = 0; i < current.mChildCount; i++) {
+                    stack.push(current.mChildren[i]);
+                }
+            }
+            return new Snapshot(edit.mRoot, edit.mSize, edit.mTokens, edit.mEntriesById, edit.mNextId);
+        }
+
+        /**
+         * Makes sure every node on the path to a key belongs to this edit, and adjusts their subtree sizes and best
+         * scores.
+         *
+         * @param entry
+         *         The search put at the key, or null if one was removed.
+         *
+         * @return The node of the key.
+         */
+        @NonNull
+        private Node ownPath(@NonNull String key, int delta, Entry entry) {
+            mRoot = mRoot.own(mOwner);
+            Node node = mRoot;
+            node.mSubtreeSize += delta;
+            node.raiseBestScores(entry);
+            for (int i = 0; i < key.length(); i++) {
+                node = node.ownChild(key.charAt(i), mOwner);
+                node.mSubtreeSize += delta;
+                node.raiseBestScores(entry);
+            }
+            return node;
+        }
+
+        private void setEntry(int id, Entry entry) {
+            int chunk = id >>> ID_CHUNK_SHIFT;
+            if (chunk == mEntriesById.length) {
+                mEntriesById = Arrays.copyOf(mEntriesById, Math.max(1, chunk * 2));
+                mOwnedChunks = Arrays.copyOf(mOwnedChunks, mEntriesById.length);
+            }
+            if (!mOwnedChunks[chunk]) {
+                Entry[] entries = mEntriesById[chunk];
+                mEntriesById[chunk] = entries != null ? entries.clone() : new Entry[ID_CHUNK_MASK + 1];
+                mOwnedChunks[chunk] = true;
+            }
+            mEntriesById[chunk][id & ID_CHUNK_MASK] = entry;
+        }
+    }
+
+    private static class Entry {
+        private final SearchSuggestion mSuggestion;
+        private final int mId;
+        private final long mDate;
+        private final double mFrecency;
+
+        private Entry(@NonNull SearchSuggestion suggestion, int id, long date, double frecency) {
+            mSuggestion = suggestion;
+            mId = id;
+            mDate = date;
+            mFrecency = frecency;
+        }
+    }
+
+    private static class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+        private static final Entry[] NO_ENTRIES = new Entry[0];
+
+        // the edit that created or copied this node, and may change it until the edit is published
+        private final Object mOwner;
+        private char[] mKeys = NO_KEYS;
+        private Node[] mChildren = NO_CHILDREN;
+        private int mChildCount = 0;
+        // replaced rather than changed, as copies of the node share it
+        private Entry[] mEntries = NO_ENTRIES;
+        // the number of searches at and below this node
+        private int mSubtreeSize = 0;
+        // the best date and frecency at and below this node, which removals leave as they are, so they may be higher
+        // than those of any search left but never lower
+        private long mBestDate = Long.MIN_VALUE;
+        private double mBestFrecency = Double.NEGATIVE_INFINITY;
+
+        private Node(Object owner) {
+            mOwner = owner;
+        }
+
+        private Entry find(@NonNull String term) {
+            for (Entry entry : mEntries) {
+                if (entry.mSuggestion.getSearchTerm().equals(term)) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        private double getBestScore(boolean byFrecency) {
+            return byFrecency ? mBestFrecency : mBestDate;
+        }
+
+        private void raiseBestScores(Entry entry) {
+            if (entry != null) {
+                mBestDate = Math.max(mBestDate, entry.mDate);
+                mBestFrecency = Math.max(mBestFrecency, entry.mFrecency);
+            }
+        }
+
+        private Node getChild(char key) {
+            int position = Arrays.binarySearch(mKeys, 0, mChildCount, key);
+            return position >= 0 ? mChildren[position] : null;
+        }
+
+        /**
+         * @return This node if it belongs to the owner, or else a copy that does.
+         */
+        @NonNull
+        private Node own(@NonNull Object owner) {
+            if (mOwner == owner) {
+                return this;
+            }
+            Node copy = new Node(owner);
+            copy.mKeys = Arrays.copyOf(mKeys, mChildCount);
+            copy.mChildren = Arrays.copyOf(mChildren, mChildCount);
+            copy.mChildCount = mChildCount;
+            copy.mEntries = mEntries;
+            copy.mSubtreeSize = mSubtreeSize;
+            copy.mBestDate = mBestDate;
+            copy.mBestFrecency = mBestFrecency;
+            return copy;
+        }
+
+        /**
+         * Gets or creates the child for a key, owned by the owner of this node.
+         */
+        @NonNull
+        private Node ownChild(char key, @NonNull Object owner) {
+            int position = Arrays.binarySearch(mKeys, 0, mChildCount, key);
+            if (position >= 0) {
+                Node child = mChildren[position].own(owner);
+                mChildren[position] = child;
+                return child;
+            }
+            position = -position - 1;
+            if (mChildCount == mKeys.length) {
+                int capacity = mChildCount == 0 ? 1 : mChildCount * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mChildren = Arrays.copyOf(mChildren, capacity);
+            }
+            System.arraycopy(mKeys, position, mKeys, position + 1, mChildCount - position);
+            System.arraycopy(mChildren, position, mChildren, position + 1, mChildCount - position);
+            Node child = new Node(owner);
+            mKeys[position] = key;
+            mChildren[position] = child;
+            mChildCount++;
+            return child;
+        }
+
+        private void addEntry(@NonNull Entry entry) {
+            Entry[] entries = new Entry[mEntries.length + 1];
+            entries[0] = entry;
+            System.arraycopy(mEntries, 0, entries, 1, mEntries.length);
+            mEntries = entries;
+        }
+
+        /**
+         * @param replacement
+         *         The entry to put in place of the old one, or null to remove it.
+         */
+        private void replaceEntry(@NonNull Entry entry, Entry replacement) {
+            int position = 0;
+            while (mEntries[position] != entry) {
+                position++;
+            }
+            if (replacement != null) {
+                mEntries = mEntries.clone();
+                mEntries[position] = replacement;
+                return;
+            }
+            Entry[] entries = new Entry[mEntries.length - 1];
+            System.arraycopy(mEntries, 0, entries, 0, position);
+            System.arraycopy(mEntries, position + 1, entries, position, entries.length - position);
+            mEntries = entries;
+        }
+    }
+
+    /**
+     * Orders nodes by the best score below them, best first.
+     */
+    private static class BestScoreFirst implements Comparator<Node> {
+        private static final BestScoreFirst BY_DATE = new BestScoreFirst(false);
+        private static final BestScoreFirst BY_FRECENCY = new BestScoreFirst(true);
+
+        private final boolean mByFrecency;
+
+        private BestScoreFirst(boolean byFrecency) {
+            mByFrecency = byFrecency;
+        }
+
+        @Override
+        public int compare(Node first, Node second) {
+            return Double.compare(second.getBestScore(mByFrecency), first.getBestScore(mByFrecency));
+        }
+    }
+}
@@ -0,0 +1,503 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+
+/**
+ * SearchMigrations upgrades the search database in place, one version at a time, without losing search history.
+ * <p>
+ * Each step changes the schema inside the upgrade transaction, which must stay short, and may then rewrite existing
+ * rows in small batches of separate transactions once the database is open. Pending row migrations are recorded in the
+ * database itself so that an interrupted migration resumes on the next launch.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+final class SearchMigrations {
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    static final String PENDING_MIGRATIONS_TABLE_NAME = "pending_migrations";
+    private static final String COLUMN_NAME_FROM_VERSION = "from_version";
+    private static final String COLUMN_NAME_LAST_ID = "last_id";
+    private static final String SQL_COLUMN_LAST_ID = COLUMN_NAME_LAST_ID + " INTEGER NOT NULL DEFAULT 0";
+
+    static final String SQL_CREATE_PENDING_MIGRATIONS_TABLE =
+            "CREATE TABLE IF NOT EXISTS " + PENDING_MIGRATIONS_TABLE_NAME + " (" +
+                    COLUMN_NAME_FROM_VERSION + " INTEGER PRIMARY KEY," +
+                    SQL_COLUMN_LAST_ID +
+                    ")";
+
+    private static final SparseArray<Step> sSteps = new SparseArray<>();
+
+    static {
+        register(new AddSearchKeyStep());
+        register(new AddFullTextIndexStep());
+        register(new AddDateIndexStep());
+        register(new AddFrecencyStep());
+        register(new IntegerDateStep());
+        register(new RefoldSearchKeyStep());
+    }
+
+    private SearchMigrations() {
+    }
+
+    private static void register(@NonNull Step step) {
+        sSteps.put(step.getFromVersion(), step);
+    }
+
+    @Nullable
+    static Step getStep(int fromVersion) {
+        return sSteps.get(fromVersion);
+    }
+
+    /**
+     * Runs the schema part of every step between the two versions. Must be called from
+     * {@link android.database.sqlite.SQLiteOpenHelper#onUpgrade(SQLiteDatabase, int, int)}.
+     *
+     * @return False if a step is missing, in which case the caller has to recreate the database.
+     */
+    static boolean upgrade(@NonNull SQLiteDatabase database, int oldVersion, int newVersion) {
+        for (int version = oldVersion; version < newVersion; version++) {
+            if (getStep(version) == null) {
+                return false;
+            }
+        }
+        database.execSQL(SQL_CREATE_PENDING_MIGRATIONS_TABLE);
+        addLastIdColumnIfMissing(database);
+        SQLiteStatement markPending = database.compileStatement("INSERT OR IGNORE INTO "
+                + PENDING_MIGRATIONS_TABLE_NAME + " (" + COLUMN_NAME_FROM_VERSION + ") VALUES (?)");
+        try {
+            for (int version = oldVersion; version < newVersion; version++) {
+                Step step = getStep(version);
+                step.migrateSchema(database);
+                if (step.hasRowMigration()) {
+                    markPending.bindLong(1, version);
+                    markPending.executeInsert();
+                }
+            }
+        } finally {
+            markPending.close();
+        }
+        return true;
+    }
+
+    /**
+     * Runs the row part of any pending steps, oldest first, in batched transactions. Must be called outside of a
+     * transaction, typically from {@link android.database.sqlite.SQLiteOpenHelper#onOpen(SQLiteDatabase)}.
+     *
+     * @return The number of rows migrated.
+     */
+    static int migratePendingRows(@NonNull SQLiteDatabase database, int batchSize) {
+        int migrated = 0;
+        Cursor cursor = database.query(PENDING_MIGRATIONS_TABLE_NAME, new String[]{COLUMN_NAME_FROM_VERSION},
+                null, null, null, null, COLUMN_NAME_FROM_VERSION + " ASC");
+        if (cursor == null) {
+            return migrated;
+        }
+        int[] pendingVersions = new int[cursor.getCount()];
+        try {
+            int i = 0;
+            while (cursor.moveToNext()) {
+                pendingVersions[i++] = cursor.getInt(0);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (int version : pendingVersions) {
+            Step step = getStep(version);
+            if (step != null) {
+                int batch;
+                do {
+                    database.beginTransactionNonExclusive();
+                    try {
+                        batch = step.migrateRows(database, batchSize);
+                        database.setTransactionSuccessful();
+                    } finally {
+                        database.endTransaction();
+                    }
+                    migrated += batch;
+                } while (batch >= batchSize);
+            }
+            database.delete(PENDING_MIGRATIONS_TABLE_NAME, COLUMN_NAME_FROM_VERSION + " = ?",
+                    new String[]{String.valueOf(version)});
+        }
+        return migrated;
+    }
+
+    /**
+     * Reads the highest row id a pending step has recorded with {@link #setLastId(SQLiteDatabase, int, long)}, so that
+     * steps which cannot tell a migrated row from its data still resume where an interrupted migration stopped.
+     *
+     * @return The recorded id, or 0 if the step has not recorded one.
+     */
+    static long getLastId(@NonNull SQLiteDatabase database, int fromVersion) {
+        SQLiteStatement query = database.compileStatement("SELECT IFNULL((SELECT " + COLUMN_NAME_LAST_ID + " FROM "
+                + PENDING_MIGRATIONS_TABLE_NAME + " WHERE " + COLUMN_NAME_FROM_VERSION + " = ?), 0)");
+        try {
+            query.bindLong(1, fromVersion);
+            return query.simpleQueryForLong();
+        } finally {
+            query.close();
+        }
+    }
+
+    /**
+     * Records the highest row id a pending step has migrated. Call it inside the batch transaction so the id is only
+     * kept together with the rows it covers.
+     */
+    static void setLastId(@NonNull SQLiteDatabase database, int fromVersion, long lastId) {
+        SQLiteStatement update = database.compileStatement("UPDATE " + PENDING_MIGRATIONS_TABLE_NAME + " SET "
+                + COLUMN_NAME_LAST_ID + " = ? WHERE " + COLUMN_NAME_FROM_VERSION + " = ?");
+        try {
+            update.bindLong(1, lastId);
+            update.bindLong(2, fromVersion);
+            update.executeUpdateDelete();
+        } finally {
+            update.close();
+        }
+    }
+
+    /**
+     * Pending migrations recorded before version 7 were kept in a table without the last id column.
+     */
+    private static void addLastIdColumnIfMissing(@NonNull SQLiteDatabase database) {
+        Cursor cursor = database.rawQuery("PRAGMA table_info(" + PENDING_MIGRATIONS_TABLE_NAME + ")", null);
+        if (cursor == null) {
+            return;
+        }
+        try {
+            int nameIndex = cursor.getColumnIndexOrThrow("name");
+            while (cursor.moveToNext()) {
+                if (COLUMN_NAME_LAST_ID.equals(cursor.getString(nameIndex))) {
+                    return;
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        database.execSQL("ALTER TABLE " + PENDING_MIGRATIONS_TABLE_NAME + " ADD COLUMN " + SQL_COLUMN_LAST_ID);
+    }
+
+    /**
+     * A migration from one database version to the next. Steps spell out their own table and column names so they keep
+     * describing the schema they were written for after later versions change it.
+     */
+    abstract static class Step {
+        private final int mFromVersion;
+
+        Step(int fromVersion) {
+            mFromVersion = fromVersion;
+        }
+
+        int getFromVersion() {
+            return mFromVersion;
+        }
+
+        /**
+         * Changes the schema. Runs inside the upgrade transaction, so it should only contain statements that do not
+         * touch every row.
+         */
+        abstract void migrateSchema(@NonNull SQLiteDatabase database);
+
+        boolean hasRowMigration() {
+            return false;
+        }
+
+        /**
+         * Migrates at most one batch of rows. Runs inside a transaction that only covers this batch.
+         *
+         * @return The number of rows migrated. Fewer than the batch size means the step is done.
+         */
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            return 0;
+        }
+    }
+
+    /**
+     * Version 2 stores a folded copy of each search term with an index over it and the search date.
+     */
+    static class AddSearchKeyStep extends Step {
+        private static final String SEARCHES_TABLE_NAME = "searches";
+        private static final String COLUMN_NAME_ID = "_id";
+        private static final String COLUMN_NAME_SEARCH_TERM = "search_term";
+        private static final String COLUMN_NAME_SEARCH_DATE = "date_searched";
+        private static final String COLUMN_NAME_SEARCH_KEY = "search_key";
+
+        AddSearchKeyStep() {
+            super(1);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+            database.execSQL("ALTER TABLE " + SEARCHES_TABLE_NAME
+                    + " ADD COLUMN " + COLUMN_NAME_SEARCH_KEY + " TEXT");
+            database.execSQL("CREATE INDEX IF NOT EXISTS searches_key_date ON " + SEARCHES_TABLE_NAME
+                    + " (" + COLUMN_NAME_SEARCH_KEY + ", " + COLUMN_NAME_SEARCH_DATE + ")");
+        }
+
+        @Override
+        boolean hasRowMigration() {
+            return true;
+        }
+
+        @Override
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            Cursor cursor = database.query(SEARCHES_TABLE_NAME,
+                    new String[]{COLUMN_NAME_ID, COLUMN_NAME_SEARCH_TERM},
+                    COLUMN_NAME_SEARCH_KEY + " IS NULL", null, null, null, null, String.valueOf(batchSize));
+            if (cursor == null) {
+                return 0;
+            }
+            int migrated = 0;
+            SQLiteStatement update = database.compileStatement("UPDATE " + SEARCHES_TABLE_NAME
+                    + " SET " + COLUMN_NAME_SEARCH_KEY + " = ? WHERE " + COLUMN_NAME_ID + " = ?");
+            try {
+                while (cursor.moveToNext()) {
+                    String term = cursor.getString(1);
+                    update.bindString(1, SearchIndex.toKey(term != null ? term : ""));
+                    update.bindLong(2, cursor.getLong(0));
+                    update.executeUpdateDelete();
+                    migrated++;
+                }
+            } finally {
+                update.close();
+                cursor.close();
+            }
+            return migrated;
+        }
+    }
+
+    /**
+     * Version 3 mirrors the search keys into an FTS4 table, kept in sync by triggers, for word prefix matching.
+     */
+    static class AddFullTextIndexStep extends Step {
+        private static final String SEARCHES_TABLE_NAME = "searches";
+        private static final String SEARCHES_FTS_TABLE_NAME = "searches_fts";
+        private static final String COLUMN_NAME_ID = "_id";
+        private static final String COLUMN_NAME_SEARCH_KEY = "search_key";
+
+        AddFullTextIndexStep() {
+            super(2);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+            database.execSQL("CREATE VIRTUAL TABLE IF NOT EXISTS " + SEARCHES_FTS_TABLE_NAME
+                    + " USING fts4(" + COLUMN_NAME_SEARCH_KEY + ")");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_insert AFTER INSERT ON " + SEARCHES_TABLE_NAME
+                    + " BEGIN INSERT INTO " + SEARCHES_FTS_TABLE_NAME + " (docid, " + COLUMN_NAME_SEARCH_KEY
+                    + ") VALUES (new." + COLUMN_NAME_ID + ", new." + COLUMN_NAME_SEARCH_KEY + "); END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_update AFTER UPDATE OF "
+                    + COLUMN_NAME_SEARCH_KEY + " ON " + SEARCHES_TABLE_NAME + " BEGIN UPDATE " + SEARCHES_FTS_TABLE_NAME
+                    + " SET " + COLUMN_NAME_SEARCH_KEY + " = new." + COLUMN_NAME_SEARCH_KEY
+                    + " WHERE docid = old." + COLUMN_NAME_ID + "; END");
+            database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_delete AFTER DELETE ON " + SEARCHES_TABLE_NAME
+                    + " BEGIN DELETE FROM " + SEARCHES_FTS_TABLE_NAME + " WHERE docid = old." + COLUMN_NAME_ID
+                    + "; END");
+        }
+
+        @Override
+        boolean hasRowMigration() {
+            return true;
+        }
+
+        /**
+         * Copies rows above the highest id already indexed. Row migrations run before the database is handed out, so
+         * no other writer can add rows while the copy is in progress.
+         */
+        @Override
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            SQLiteStatement copy = database.compileStatement("INSERT INTO " + SEARCHES_FTS_TABLE_NAME
+                    + " (docid, " + COLUMN_NAME_SEARCH_KEY + ") SELECT " + COLUMN_NAME_ID + ", "
+                    + COLUMN_NAME_SEARCH_KEY + " FROM " + SEARCHES_TABLE_NAME + " WHERE " + COLUMN_NAME_ID
+                    + " > IFNULL((SELECT docid FROM " + SEARCHES_FTS_TABLE_NAME + " ORDER BY docid DESC LIMIT 1), 0)"
+                    + " ORDER BY " + COLUMN_NAME_ID + " LIMIT ?");
+            try {
+                copy.bindLong(1, batchSize);
+                return copy.executeUpdateDelete();
+            } finally {
+                copy.close();
+            }
+        }
+    }
+
+    /**
+     * Version 4 indexes the search date so that recent searches and evictions read the oldest or newest rows directly.
+     */
+    static class AddDateIndexStep extends Step {
+
+        AddDateIndexStep() {
+            super(3);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS searches_date ON searches (date_searched)");
+        }
+    }
+
+    /**
+     * Version 5 counts repeated searches and keeps a frecency for each search, indexed for ranking. A search's
+     * frecency starts out equal to its date.
+     */
+    static class AddFrecencyStep extends Step {
+
+        AddFrecencyStep() {
+            super(4);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+            database.execSQL("ALTER TABLE searches ADD COLUMN search_count INTEGER NOT NULL DEFAULT 1");
+            database.execSQL("ALTER TABLE searches ADD COLUMN frecency REAL");
+            database.execSQL("CREATE INDEX IF NOT EXISTS searches_frecency ON searches (frecency)");
+        }
+
+        @Override
+        boolean hasRowMigration() {
+            return true;
+        }
+
+        @Override
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            SQLiteStatement update = database.compileStatement("UPDATE searches SET frecency = IFNULL(date_searched, 0)"
+                    + " WHERE _id IN (SELECT _id FROM searches WHERE frecency IS NULL LIMIT ?)");
+            try {
+                update.bindLong(1, batchSize);
+                return update.executeUpdateDelete();
+            } finally {
+                update.close();
+            }
+        }
+    }
+
+    /**
+     * Version 6 declares the search date as an INTEGER holding epoch milliseconds instead of a REAL. SQLite cannot
+     * change a column's type in place, so the table is rebuilt: the upgrade only creates the new table and its indexes,
+     * and the rows are then copied over in id order, a batch at a time, keeping their ids so the full text index stays
+     * valid. Each batch resumes after the highest id already copied, so an interrupted migration picks up where it
+     * stopped. The batch that copies the last rows also swaps the tables and recreates the full text triggers, which
+     * are dropped along with the old table.
+     */
+    static class IntegerDateStep extends Step {
+        static final String SQL_DROP_REBUILD_TABLE = "DROP TABLE IF EXISTS searches_rebuild";
+
+        IntegerDateStep() {
+            super(5);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+            // index names are global, and nothing reads the old table before its rows have been copied
+            database.execSQL("DROP INDEX IF EXISTS searches_key_date");
+            database.execSQL("DROP INDEX IF EXISTS searches_date");
+            database.execSQL("DROP INDEX IF EXISTS searches_frecency");
+            database.execSQL("CREATE TABLE searches_rebuild (_id INTEGER PRIMARY KEY, search_term TEXT,"
+                    + " date_searched INTEGER, search_key TEXT, search_count INTEGER NOT NULL DEFAULT 1,"
+                    + " frecency REAL, UNIQUE(search_term))");
+            database.execSQL("CREATE INDEX searches_key_date ON searches_rebuild (search_key, date_searched)");
+            database.execSQL("CREATE INDEX searches_date ON searches_rebuild (date_searched)");
+            database.execSQL("CREATE INDEX searches_frecency ON searches_rebuild (frecency)");
+        }
+
+        @Override
+        boolean hasRowMigration() {
+            return true;
+        }
+
+        @Override
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            SQLiteStatement copy = database.compileStatement("INSERT INTO searches_rebuild"
+                    + " (_id, search_term, date_searched, search_key, search_count, frecency)"
+                    + " SELECT _id, search_term, CAST(date_searched AS INTEGER), search_key, search_count, frecency"
+                    + " FROM searches WHERE _id > IFNULL((SELECT MAX(_id) FROM searches_rebuild), 0)"
+                    + " ORDER BY _id LIMIT ?");
+            int copied;
+            try {
+                copy.bindLong(1, batchSize);
+                copied = copy.executeUpdateDelete();
+            } finally {
+                copy.close();
+            }
+            if (copied < batchSize) {
+                database.execSQL("DROP TABLE searches");
+                database.execSQL("ALTER TABLE searches_rebuild RENAME TO searches");
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_insert AFTER INSERT ON searches"
+                        + " BEGIN INSERT INTO searches_fts (docid, search_key) VALUES (new._id, new.search_key); END");
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_update AFTER UPDATE OF search_key"
+                        + " ON searches BEGIN UPDATE searches_fts SET search_key = new.search_key"
+                        + " WHERE docid = old._id; END");
+                database.execSQL("CREATE TRIGGER IF NOT EXISTS searches_fts_delete AFTER DELETE ON searches"
+                        + " BEGIN DELETE FROM searches_fts WHERE docid = old._id; END");
+            }
+            return copied;
+        }
+    }
+
+    /**
+     * Version 7 folds search keys with NFKD, without combining marks and regardless of the default locale. Every row is
+     * read once in id order and only the keys that fold differently are written, which the update trigger carries over
+     * to the full text index. A refolded key cannot be told apart from one that was already folded, so each batch
+     * records the highest id it read in the pending migration and an interrupted migration resumes after it.
+     */
+    static class RefoldSearchKeyStep extends Step {
+        RefoldSearchKeyStep() {
+            super(6);
+        }
+
+        @Override
+        void migrateSchema(@NonNull SQLiteDatabase database) {
+        }
+
+        @Override
+        boolean hasRowMigration() {
+            return true;
+        }
+
+        @Override
+        int migrateRows(@NonNull SQLiteDatabase database, int batchSize) {
+            long lastId = getLastId(database, getFromVersion());
+            Cursor cursor = database.rawQuery("SELECT _id, search_term, search_key FROM searches WHERE _id > ?"
+                    + " ORDER BY _id LIMIT ?", new String[]{String.valueOf(lastId), String.valueOf(batchSize)});
+            if (cursor == null) {
+                return 0;
+            }
+            int read = 0;
+            SQLiteStatement update = database.compileStatement("UPDATE searches SET search_key = ? WHERE _id = ?");
+            try {
+                while (cursor.moveToNext()) {
+                    String term = cursor.getString(1);
+                    String key = SearchIndex.toKey(term != null ? term : "");
+                    if (!key.equals(cursor.getString(2))) {
+                        update.bindString(1, key);
+                        update.bindLong(2, cursor.getLong(0));
+                        update.executeUpdateDelete();
+                    }
+                    lastId = cursor.getLong(0);
+                    read++;
+                }
+            } finally {
+                update.close();
+                cursor.close();
+            }
+            setLastId(database, getFromVersion(), lastId);
+            return read;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+
+/**
+ * SearchRecentBuffer keeps the most recently performed searches in a ring, newest first, so that recent searches can be
+ * shown on the same frame the search view gains focus. The ring is filled from the {@link SearchIndex} once it has
+ * loaded, and kept up to date as searches are performed, evicted or deleted.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchRecentBuffer {
+    private final SearchSuggestion[] mSearches;
+    private int mHead = 0;
+    private int mSize = 0;
+    private boolean mLoaded = false;
+    // true while every search there is fits in the ring
+    private boolean mHoldsAll = false;
+
+    SearchRecentBuffer(int capacity) {
+        mSearches = new SearchSuggestion[capacity];
+    }
+
+    /**
+     * Replaces the contents of the ring with the most recent searches of a loaded index.
+     */
+    synchronized void load(@NonNull SearchIndex index) {
+        ArrayList<SearchSuggestion> recent = index.startingWith("", mSearches.length + 1,
+                MaterialSearchView.RANKING_MODE_RECENT);
+        mHead = 0;
+        mSize = Math.min(recent.size(), mSearches.length);
+        for (int i = 0; i < mSize; i++) {
+            mSearches[i] = recent.get(i);
+        }
+        mHoldsAll = recent.size() <= mSearches.length;
+        mLoaded = true;
+    }
+
+    /**
+     * Forgets every search, as after the history was deleted.
+     */
+    synchronized void clear() {
+        mHead = 0;
+        mSize = 0;
+        mHoldsAll = true;
+        mLoaded = true;
+    }
+
+    /**
+     * Records a performed search. A term that is already in the ring moves to its new place.
+     */
+    synchronized void add(@NonNull SearchSuggestion searchSuggestion) {
+        if (!mLoaded) {
+            return;
+        }
+        int existing = indexOf(searchSuggestion.getSearchTerm());
+        if (existing >= 0) {
+            if (get(existing).getDateMillis() >= searchSuggestion.getDateMillis()) {
+                return;
+            }
+            removeAt(existing);
+        }
+        int position = 0;
+        while (position < mSize && get(position).getDateMillis() > searchSuggestion.getDateMillis()) {
+            position++;
+        }
+        if (position == mSearches.length) {
+            mHoldsAll = false;
+            return;
+        }
+        if (mSize == mSearches.length) {
+            // the oldest search falls out
+            mSize--;
+            mHoldsAll = false;
+        }
+        if (position == 0) {
+            mHead = (mHead + mSearches.length - 1) % mSearches.length;
+        } else {
+            for (int i = mSize; i > position; i--) {
+                set(i, get(i - 1));
+            }
+        }
+        set(position, searchSuggestion);
+        mSize++;
+    }
+
+    synchronized void remove(@NonNull String term) {
+        int position = indexOf(term);
+        if (position >= 0) {
+            removeAt(position);
+        }
+    }
+
+    /**
+     * @return The most recent searches, newest first, or null if the ring cannot tell which they are.
+     */
+    @Nullable
+    synchronized ArrayList<SearchSuggestion> getMostRecent(int limit) {
+        if (!mLoaded || (limit > mSize && !mHoldsAll)) {
+            return null;
+        }
+        int count = Math.min(limit, mSize);
+        ArrayList<SearchSuggestion> recent = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            recent.add(get(i));
+        }
+        return recent;
+    }
+
+    private int indexOf(@NonNull String term) {
+        for (int i = 0; i < mSize; i++) {
+            if (get(i).getSearchTerm().equals(term)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void removeAt(int position) {
+        for (int i = position; i < mSize - 1; i++) {
+            set(i, get(i + 1));
+        }
+        mSize--;
+        set(mSize, null);
+    }
+
+    private SearchSuggestion get(int position) {
+        return mSearches[(mHead + position) % mSearches.length];
+    }
+
+    private void set(int position, SearchSuggestion searchSuggestion) {
+        mSearches[(mHead + position) % mSearches.length] = searchSuggestion;
+    }
+}
@@ -0,0 +1,129 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * SearchResultCache remembers the suggestions read from the database for recently typed text, so that a query whose
+ * answer can be worked out from an earlier result does not go back to SQLite. Every match mode only narrows as text is
+ * typed at the end, so if an earlier result for a prefix of the new text was complete, the new result is that result
+ * filtered in memory. A result is complete when it holds fewer searches than the limit.
+ * <p>
+ * A cache belongs to one view and must only be used on the main thread.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchResultCache {
+    private static final int MAX_ENTRIES = 8;
+
+    private final LinkedHashMap<String, ArrayList<SearchSuggestion>> mResults =
+            new LinkedHashMap<String, ArrayList<SearchSuggestion>>(MAX_ENTRIES, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, ArrayList<SearchSuggestion>> eldest) {
+                    return size() > MAX_ENTRIES;
+                }
+            };
+    private int mMatchMode = -1;
+    private int mRankingMode = -1;
+    private int mLimit = -1;
+    private int mDataVersion = -1;
+    private int mHits = 0;
+    private int mMisses = 0;
+
+    /**
+     * Answers a query from the cache if possible, and counts it as a hit or a miss.
+     *
+     * @param key
+     *         The folded typed text.
+     * @param dataVersion
+     *         The current version of the searches, from {@link SearchDatabase#getDataVersion()}.
+     *
+     * @return The suggestions, or null if the database has to be queried.
+     */
+    @Nullable
+    ArrayList<SearchSuggestion> get(@NonNull String key, @MaterialSearchView.MatchMode int matchMode,
+                                    @MaterialSearchView.RankingMode int rankingMode, int limit, int dataVersion) {
+        if (matchMode != mMatchMode || rankingMode != mRankingMode || limit != mLimit
+                || dataVersion != mDataVersion) {
+            mResults.clear();
+        }
+        ArrayList<SearchSuggestion> exact = mResults.get(key);
+        if (exact != null) {
+            mHits++;
+            return new ArrayList<>(exact);
+        }
+        ArrayList<SearchSuggestion> narrowest = null;
+        int narrowestLength = -1;
+        for (Map.Entry<String, ArrayList<SearchSuggestion>> entry : mResults.entrySet()) {
+            String cachedKey = entry.getKey();
+            if (entry.getValue().size() < limit && cachedKey.length() > narrowestLength && key.startsWith(cachedKey)) {
+                narrowest = entry.getValue();
+                narrowestLength = cachedKey.length();
+            }
+        }
+        if (narrowest == null) {
+            mMisses++;
+            return null;
+        }
+        mHits++;
+        List<String> tokens = SearchTokenizer.getTokens(key);
+        ArrayList<SearchSuggestion> results = new ArrayList<>(narrowest.size());
+        for (SearchSuggestion search : narrowest) {
+            if (SearchTokenizer.matches(search.getSearchKey(), key, tokens, matchMode)) {
+                results.add(search);
+            }
+        }
+        mResults.put(key, new ArrayList<>(results));
+        return results;
+    }
+
+    /**
+     * Remembers the suggestions the database returned for a query.
+     *
+     * @param dataVersion
+     *         The version of the searches when the query was started.
+     */
+    void put(@NonNull String key, @MaterialSearchView.MatchMode int matchMode,
+             @MaterialSearchView.RankingMode int rankingMode, int limit, int dataVersion,
+             @NonNull ArrayList<SearchSuggestion> results) {
+        if (matchMode != mMatchMode || rankingMode != mRankingMode || limit != mLimit
+                || dataVersion != mDataVersion) {
+            mResults.clear();
+            mMatchMode = matchMode;
+            mRankingMode = rankingMode;
+            mLimit = limit;
+            mDataVersion = dataVersion;
+        }
+        mResults.put(key, new ArrayList<>(results));
+    }
+
+    /**
+     * @return The share of queries answered without the database, from 0 to 1.
+     */
+    float getHitRate() {
+        int lookups = mHits + mMisses;
+        return lookups > 0 ? (float) mHits / lookups : 0;
+    }
+
+    void clear() {
+        mResults.clear();
+    }
+}
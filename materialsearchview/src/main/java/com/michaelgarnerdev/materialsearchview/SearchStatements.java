@@ -0,0 +1,88 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.support.annotation.NonNull;
+
+import java.util.HashMap;
+
+/**
+ * SearchStatements compiles each statement once per connection and hands the same {@link SQLiteStatement} back on
+ * every later call, so SQLite does not have to parse and plan it again. Values are always passed as bind arguments.
+ * <p>
+ * Statements are not thread safe, so a SearchStatements must only be used by one thread at a time.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchStatements {
+    private final SQLiteDatabase mDatabase;
+    private final HashMap<String, SQLiteStatement> mStatements = new HashMap<>();
+    private int mPreparedCount = 0;
+    private int mReusedCount = 0;
+
+    SearchStatements(@NonNull SQLiteDatabase database) {
+        mDatabase = database;
+    }
+
+    @NonNull
+    SQLiteDatabase getDatabase() {
+        return mDatabase;
+    }
+
+    /**
+     * Gets the compiled form of a statement, compiling it on first use. Bindings left over from the last use are
+     * cleared.
+     *
+     * @param sql
+     *         The statement, with a ? in place of each value.
+     *
+     * @return The compiled statement. It is owned by this SearchStatements and must not be closed by the caller.
+     */
+    @NonNull
+    synchronized SQLiteStatement get(@NonNull String sql) {
+        SQLiteStatement statement = mStatements.get(sql);
+        if (statement == null) {
+            statement = mDatabase.compileStatement(sql);
+            mStatements.put(sql, statement);
+            mPreparedCount++;
+        } else {
+            statement.clearBindings();
+            mReusedCount++;
+        }
+        return statement;
+    }
+
+    /**
+     * @return The number of statements that were compiled.
+     */
+    synchronized int getPreparedCount() {
+        return mPreparedCount;
+    }
+
+    /**
+     * @return The number of times an already compiled statement was used again instead of being compiled.
+     */
+    synchronized int getReusedCount() {
+        return mReusedCount;
+    }
+
+    synchronized void close() {
+        for (SQLiteStatement statement : mStatements.values()) {
+            statement.close();
+        }
+        mStatements.clear();
+    }
+}
@@ -3,6 +3,7 @@ package com.michaelgarnerdev.materialsearchview;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 
 /**
  * SearchSuggestion helps encapsulate search data with easy-to-use accessor methods.
@@ -26,22 +27,44 @@ public class SearchSuggestion implements Parcelable {
 
     @NonNull
     private String mSearchTerm = "";
-    @NonNull
-    private String mDate = "";
+    private long mDate = 0;
+    // the folded term, as stored in the database, computed once when first needed
+    private String mSearchKey;
 
     public SearchSuggestion() {
 
     }
 
+    /**
+     * @param searchTerm
+     *         The search term.
+     * @param date
+     *         When the search was performed, in milliseconds since the epoch.
+     */
     public SearchSuggestion(@NonNull String searchTerm,
-                            @NonNull String date) {
+                            long date) {
         this.mSearchTerm = searchTerm;
         this.mDate = date;
     }
 
+    SearchSuggestion(@NonNull String searchTerm, long date, @Nullable String searchKey) {
+        this(searchTerm, date);
+        this.mSearchKey = searchKey;
+    }
+
+    /**
+     * @deprecated Use {@link #SearchSuggestion(String, long)}. The date is parsed as milliseconds since the epoch, and
+     * a date that cannot be parsed is treated as 0.
+     */
+    @Deprecated
+    public SearchSuggestion(@NonNull String searchTerm,
+                            @NonNull String date) {
+        this(searchTerm, parseDate(date));
+    }
+
     protected SearchSuggestion(Parcel in) {
         mSearchTerm = in.readString();
-        mDate = in.readString();
+        mDate = in.readLong();
     }
 
     public static final Creator<SearchSuggestion> CREATOR = new Creator<SearchSuggestion>() {
@@ -64,7 +87,7 @@ public class SearchSuggestion implements Parcelable {
     @Override
     public void writeToParcel(Parcel parcel, int i) {
         parcel.writeString(mSearchTerm);
-        parcel.writeString(mDate);
+        parcel.writeLong(mDate);
     }
 
     @NonNull
@@ -72,8 +95,38 @@ public class SearchSuggestion implements Parcelable {
         return mSearchTerm;
     }
 
+    /**
+     * @return The search term folded by {@link SearchIndex#toKey(String)}.
+     */
     @NonNull
-    public String getDate() {
+    String getSearchKey() {
+        if (mSearchKey == null) {
+            mSearchKey = SearchIndex.toKey(mSearchTerm);
+        }
+        return mSearchKey;
+    }
+
+    /**
+     * @return When the search was performed, in milliseconds since the epoch.
+     */
+    public long getDateMillis() {
         return mDate;
     }
+
+    /**
+     * @deprecated Use {@link #getDateMillis()}.
+     */
+    @Deprecated
+    @NonNull
+    public String getDate() {
+        return String.valueOf(mDate);
+    }
+
+    private static long parseDate(@NonNull String date) {
+        try {
+            return (long) Double.parseDouble(date);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
 }
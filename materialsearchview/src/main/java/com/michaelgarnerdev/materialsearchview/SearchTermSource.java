@@ -0,0 +1,110 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.Iterator;
+
+/**
+ * SearchTermSource hands out search terms one at a time for a bulk import, so that the terms never have to be held in
+ * memory all at once. Sources are read on the thread doing the import.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+abstract class SearchTermSource {
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * @return The next term, or null once there are no more.
+     */
+    @Nullable
+    abstract CharSequence next() throws IOException;
+
+    /**
+     * Releases whatever the source reads from. Called once the import is done, whether or not it succeeded.
+     */
+    void close() {
+    }
+
+    @NonNull
+    static SearchTermSource of(@NonNull final Iterator<? extends CharSequence> terms) {
+        return new SearchTermSource() {
+            @Nullable
+            @Override
+            CharSequence next() {
+                return terms.hasNext() ? terms.next() : null;
+            }
+        };
+    }
+
+    /**
+     * Reads one term per line of UTF-8 text. The stream is closed once the import is done.
+     */
+    @NonNull
+    static SearchTermSource of(@NonNull InputStream input) {
+        return new LineSource(input, null);
+    }
+
+    /**
+     * Reads one term per line of a UTF-8 text file. The file is only opened once the import starts.
+     */
+    @NonNull
+    static SearchTermSource of(@NonNull File file) {
+        return new LineSource(null, file);
+    }
+
+    private static class LineSource extends SearchTermSource {
+        private InputStream mInput;
+        private final File mFile;
+        private BufferedReader mReader;
+
+        private LineSource(@Nullable InputStream input, @Nullable File file) {
+            mInput = input;
+            mFile = file;
+        }
+
+        @Nullable
+        @Override
+        CharSequence next() throws IOException {
+            if (mReader == null) {
+                if (mInput == null) {
+                    mInput = new FileInputStream(mFile);
+                }
+                mReader = new BufferedReader(new InputStreamReader(mInput, UTF_8));
+            }
+            return mReader.readLine();
+        }
+
+        @Override
+        void close() {
+            try {
+                if (mReader != null) {
+                    mReader.close();
+                } else if (mInput != null) {
+                    mInput.close();
+                }
+            } catch (IOException ignored) {
+            }
+        }
+    }
+}
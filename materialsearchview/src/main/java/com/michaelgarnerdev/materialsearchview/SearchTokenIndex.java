@@ -0,0 +1,284 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * SearchTokenIndex maps each word of the searches in a {@link SearchIndex} to the ids of the searches that contain it,
+ * so that searches containing every typed word can be found without looking at any other search. Each posting list is
+ * a sorted int array, as ids are handed out in increasing order.
+ * <p>
+ * The words are kept in a trie that is never changed once it is published: adding words copies the path to each of
+ * them, except for nodes that were already copied by the same owner, which are changed in place. Ids of removed
+ * searches are left in the posting lists, so callers have to skip them, and should build a new index once too many
+ * have been removed.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchTokenIndex {
+    static final SearchTokenIndex EMPTY = new SearchTokenIndex(new Node(null));
+
+    private static final int[] NO_IDS = new int[0];
+
+    private final Node mRoot;
+
+    private SearchTokenIndex(@NonNull Node root) {
+        mRoot = root;
+    }
+
+    /**
+     * Indexes the words of a search.
+     *
+     * @param owner
+     *         The owner of the change, whose nodes are not published yet and may be changed in place.
+     * @param id
+     *         The id of the search, higher than any id added before.
+     * @param tokens
+     *         The words of the search, from {@link SearchTokenizer#getTokens(String)}.
+     *
+     * @return The index with the words added, which is this one if its root already belonged to the owner.
+     */
+    @NonNull
+    SearchTokenIndex add(@NonNull Object owner, int id, @NonNull List<String> tokens) {
+        Node root = mRoot.own(owner);
+        for (String token : tokens) {
+            Node node = root;
+            for (int i = 0; i < token.length(); i++) {
+                node = node.ownChild(token.charAt(i), owner);
+            }
+            node.addId(id);
+        }
+        return root == mRoot ? this : new SearchTokenIndex(root);
+    }
+
+    /**
+     * Finds the searches that contain a word for each of the typed words. The candidate ids of each typed word are
+     * intersected, starting with the word that has the fewest, so that a rare word keeps the work small.
+     *
+     * @param tokens
+     *         The typed words, from {@link SearchTokenizer#getTokens(String)}.
+     * @param onlyLastIsPrefix
+     *         True if only the last typed word may be the start of a word, and the others have to be whole words.
+     *
+     * @return The sorted ids of the matching searches, including removed ones.
+     */
+    @NonNull
+    int[] find(@NonNull List<String> tokens, boolean onlyLastIsPrefix) {
+        int last = tokens.size() - 1;
+        ArrayList<ArrayList<Node>> candidates = new ArrayList<>(tokens.size());
+        int[] counts = new int[tokens.size()];
+        for (int i = 0; i <= last; i++) {
+            ArrayList<Node> lists = getPostings(tokens.get(i), i == last || !onlyLastIsPrefix);
+            for (Node postings : lists) {
+                counts[i] += postings.mIdCount;
+            }
+            if (counts[i] == 0) {
+                return NO_IDS;
+            }
+            candidates.add(lists);
+        }
+        // typed words by how many candidates they have, fewest first
+        int[] order = new int[tokens.size()];
+        for (int i = 0; i < order.length; i++) {
+            int position = i;
+            while (position > 0 && counts[order[position - 1]] > counts[i]) {
+                order[position] = order[position - 1];
+                position--;
+            }
+            order[position] = i;
+        }
+        int[] ids = union(candidates.get(order[0]), counts[order[0]]);
+        for (int i = 1; i < order.length && ids.length > 0; i++) {
+            ids = retain(ids, candidates.get(order[i]));
+        }
+        return ids;
+    }
+
+    /**
+     * @return The nodes holding the ids of the word, or of every word starting with it.
+     */
+    @NonNull
+    private ArrayList<Node> getPostings(@NonNull String token, boolean prefix) {
+        ArrayList<Node> lists = new ArrayList<>();
+        Node node = mRoot;
+        for (int i = 0; i < token.length() && node != null; i++) {
+            node = node.getChild(token.charAt(i));
+        }
+        if (node == null) {
+            return lists;
+        }
+        if (!prefix) {
+            if (node.mIdCount > 0) {
+                lists.add(node);
+            }
+            return lists;
+        }
+        ArrayDeque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            if (current.mIdCount > 0) {
+                lists.add(current);
+            }
+            for (int i = 0; i < current.mChildCount; i++) {
+                stack.push(current.mChildren[i]);
+            }
+        }
+        return lists;
+    }
+
+    @NonNull
+    private static int[] union(@NonNull ArrayList<Node> lists, int count) {
+        if (lists.size() == 1) {
+            return Arrays.copyOf(lists.get(0).mIds, count);
+        }
+        int[] ids = new int[count];
+        int size = 0;
+        for (Node postings : lists) {
+            System.arraycopy(postings.mIds, 0, ids, size, postings.mIdCount);
+            size += postings.mIdCount;
+        }
+        Arrays.sort(ids);
+        // a search with two words that start alike is in two of the lists
+        int distinct = 0;
+        for (int i = 0; i < size; i++) {
+            if (distinct == 0 || ids[distinct - 1] != ids[i]) {
+                ids[distinct++] = ids[i];
+            }
+        }
+        return distinct < size ? Arrays.copyOf(ids, distinct) : ids;
+    }
+
+    /**
+     * @return The ids that are also in one of the lists, still sorted.
+     */
+    @NonNull
+    private static int[] retain(@NonNull int[] ids, @NonNull ArrayList<Node> lists) {
+        boolean[] found = new boolean[ids.length];
+        for (Node postings : lists) {
+            if (postings.mIdCount > ids.length) {
+                // walk both lists together
+                int j = 0;
+                for (int i = 0; i < ids.length; i++) {
+                    while (j < postings.mIdCount && postings.mIds[j] < ids[i]) {
+                        j++;
+                    }
+                    if (j == postings.mIdCount) {
+                        break;
+                    }
+                    if (postings.mIds[j] == ids[i]) {
+                        found[i] = true;
+                    }
+                }
+            } else {
+                for (int j = 0; j < postings.mIdCount; j++) {
+                    int position = Arrays.binarySearch(ids, postings.mIds[j]);
+                    if (position >= 0) {
+                        found[position] = true;
+                    }
+                }
+            }
+        }
+        int size = 0;
+        for (int i = 0; i < ids.length; i++) {
+            if (found[i]) {
+                ids[size++] = ids[i];
+            }
+        }
+        return Arrays.copyOf(ids, size);
+    }
+
+    private static class Node {
+        private static final char[] NO_KEYS = new char[0];
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private final Object mOwner;
+        private char[] mKeys = NO_KEYS;
+        private Node[] mChildren = NO_CHILDREN;
+        private int mChildCount = 0;
+        // the posting list of the word ending here
+        private int[] mIds = NO_IDS;
+        private int mIdCount = 0;
+
+        private Node(Object owner) {
+            mOwner = owner;
+        }
+
+        /**
+         * @return This node if it belongs to the owner, or else a copy that does.
+         */
+        @NonNull
+        private Node own(@NonNull Object owner) {
+            if (mOwner == owner) {
+                return this;
+            }
+            Node copy = new Node(owner);
+            copy.mKeys = Arrays.copyOf(mKeys, mChildCount);
+            copy.mChildren = Arrays.copyOf(mChildren, mChildCount);
+            copy.mChildCount = mChildCount;
+            // the ids are shared, as only the newest copy ever adds to them, past where older copies stop reading
+            copy.mIds = mIds;
+            copy.mIdCount = mIdCount;
+            return copy;
+        }
+
+        private Node getChild(char key) {
+            int position = Arrays.binarySearch(mKeys, 0, mChildCount, key);
+            return position >= 0 ? mChildren[position] : null;
+        }
+
+        /**
+         * Gets or creates the child for a key, owned by the owner of this node.
+         */
+        @NonNull
+        private Node ownChild(char key, @NonNull Object owner) {
+            int position = Arrays.binarySearch(mKeys, 0, mChildCount, key);
+            if (position >= 0) {
+                Node child = mChildren[position].own(owner);
+                mChildren[position] = child;
+                return child;
+            }
+            position = -position - 1;
+            if (mChildCount == mKeys.length) {
+                int capacity = mChildCount == 0 ? 1 : mChildCount * 2;
+                mKeys = Arrays.copyOf(mKeys, capacity);
+                mChildren = Arrays.copyOf(mChildren, capacity);
+            }
+            System.arraycopy(mKeys, position, mKeys, position + 1, mChildCount - position);
+            System.arraycopy(mChildren, position, mChildren, position + 1, mChildCount - position);
+            Node child = new Node(owner);
+            mKeys[position] = key;
+            mChildren[position] = child;
+            mChildCount++;
+            return child;
+        }
+
+        private void addId(int id) {
+            // a word that is repeated within a search is only listed once
+            if (mIdCount > 0 && mIds[mIdCount - 1] == id) {
+                return;
+            }
+            if (mIdCount == mIds.length) {
+                mIds = Arrays.copyOf(mIds, Math.max(2, mIdCount * 2));
+            }
+            mIds[mIdCount++] = id;
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * SearchTokenizer splits folded search keys into the words that word prefix and full text matching work on, and tells
+ * whether a search matches typed text the way the full text index would. It depends on nothing but the JDK, so the
+ * in-memory index and caches that use it can be tested on a plain JVM.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchTokenizer {
+
+    private SearchTokenizer() {
+    }
+
+    /**
+     * Splits a folded search key into the words that the full text index matches against.
+     */
+    @NonNull
+    static ArrayList<String> getTokens(@NonNull String key) {
+        ArrayList<String> tokens = new ArrayList<>();
+        int start = -1;
+        for (int i = 0; i <= key.length(); i++) {
+            boolean tokenCharacter = i < key.length() && Character.isLetterOrDigit(key.charAt(i));
+            if (tokenCharacter && start < 0) {
+                start = i;
+            } else if (!tokenCharacter && start >= 0) {
+                tokens.add(key.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * Tells whether a search would be returned by the database query for typed text, for searches that are not in the
+     * database yet.
+     *
+     * @param searchKey
+     *         The folded key of the search.
+     * @param key
+     *         The folded typed text.
+     * @param tokens
+     *         The words of the typed text, from {@link #getTokens(String)}.
+     */
+    static boolean matches(@NonNull String searchKey, @NonNull String key, @NonNull List<String> tokens,
+                           @MaterialSearchView.MatchMode int matchMode) {
+        if (matchMode == MaterialSearchView.MATCH_MODE_PREFIX) {
+            return searchKey.startsWith(key);
+        }
+        if (tokens.isEmpty()) {
+            return false;
+        }
+        ArrayList<String> searchTokens = getTokens(searchKey);
+        int last = tokens.size() - 1;
+        if (matchMode == MaterialSearchView.MATCH_MODE_TOKEN_PREFIX) {
+            for (int start = 0; start + last < searchTokens.size(); start++) {
+                int i = 0;
+                while (i < last && searchTokens.get(start + i).equals(tokens.get(i))) {
+                    i++;
+                }
+                if (i == last && searchTokens.get(start + last).startsWith(tokens.get(last))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (String token : tokens) {
+            boolean found = false;
+            for (String searchToken : searchTokens) {
+                if (searchToken.startsWith(token)) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,169 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+
+/**
+ * SearchTopK keeps the best ranked of any number of offered items in a bounded min-heap with the worst kept item at
+ * the root, so ranking n candidates costs O(n log k) rather than a full sort. Items rank by tier first, lower tiers
+ * first, then by score, higher scores first, then by the order they were offered in.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchTopK<T> {
+    private final Object[] mItems;
+    private final int[] mTiers;
+    private final double[] mScores;
+    private final int[] mArrivals;
+    private int mSize = 0;
+    private int mOffered = 0;
+
+    SearchTopK(int k) {
+        int capacity = Math.max(k, 0);
+        mItems = new Object[capacity];
+        mTiers = new int[capacity];
+        mScores = new double[capacity];
+        mArrivals = new int[capacity];
+    }
+
+    int size() {
+        return mSize;
+    }
+
+    boolean offer(@NonNull T item, double score) {
+        return offer(item, 0, score);
+    }
+
+    /**
+     * @return True if the item is among the best so far.
+     */
+    boolean offer(@NonNull T item, int tier, double score) {
+        int arrival = mOffered++;
+        if (mSize < mItems.length) {
+            set(mSize, item, tier, score, arrival);
+            siftUp(mSize++);
+            return true;
+        }
+        // an item that ties with the root arrived later, so it ranks below it
+        if (mSize == 0 || tier > mTiers[0] || (tier == mTiers[0] && score <= mScores[0])) {
+            return false;
+        }
+        set(0, item, tier, score, arrival);
+        siftDown(0);
+        return true;
+    }
+
+    /**
+     * @return True if an item of the given tier and score would be kept, so that candidates that can score no higher
+     * need not be offered at all.
+     */
+    boolean wouldKeep(int tier, double score) {
+        return mSize < mItems.length || (mSize > 0 && (tier < mTiers[0] || (tier == mTiers[0] && score > mScores[0])));
+    }
+
+    /**
+     * Offers every item kept by another heap, as when the candidates were ranked in parts.
+     */
+    @SuppressWarnings("unchecked")
+    void offerAll(@NonNull SearchTopK<T> other) {
+        for (int i = 0; i < other.mSize; i++) {
+            offer((T) other.mItems[i], other.mTiers[i], other.mScores[i]);
+        }
+    }
+
+    /**
+     * Empties the heap.
+     *
+     * @return The kept items, best ranked first.
+     */
+    @NonNull
+    @SuppressWarnings("unchecked")
+    ArrayList<T> toBestFirst() {
+        Object[] sorted = new Object[mSize];
+        for (int i = mSize - 1; i >= 0; i--) {
+            sorted[i] = mItems[0];
+            mSize--;
+            move(mSize, 0);
+            mItems[mSize] = null;
+            siftDown(0);
+        }
+        ArrayList<T> items = new ArrayList<>(sorted.length);
+        for (Object item : sorted) {
+            items.add((T) item);
+        }
+        return items;
+    }
+
+    private boolean isWorse(int first, int second) {
+        if (mTiers[first] != mTiers[second]) {
+            return mTiers[first] > mTiers[second];
+        }
+        if (mScores[first] != mScores[second]) {
+            return mScores[first] < mScores[second];
+        }
+        return mArrivals[first] > mArrivals[second];
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) / 2;
+            if (!isWorse(position, parent)) {
+                return;
+            }
+            swap(position, parent);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int worst = position;
+            int left = 2 * position + 1;
+            if (left < mSize && isWorse(left, worst)) {
+                worst = left;
+            }
+            if (left + 1 < mSize && isWorse(left + 1, worst)) {
+                worst = left + 1;
+            }
+            if (worst == position) {
+                return;
+            }
+            swap(position, worst);
+            position = worst;
+        }
+    }
+
+    private void set(int position, Object item, int tier, double score, int arrival) {
+        mItems[position] = item;
+        mTiers[position] = tier;
+        mScores[position] = score;
+        mArrivals[position] = arrival;
+    }
+
+    private void move(int from, int to) {
+        set(to, mItems[from], mTiers[from], mScores[from], mArrivals[from]);
+    }
+
+    private void swap(int first, int second) {
+        Object item = mItems[first];
+        int tier = mTiers[first];
+        double score = mScores[first];
+        int arrival = mArrivals[first];
+        move(second, first);
+        set(second, item, tier, score, arrival);
+    }
+}
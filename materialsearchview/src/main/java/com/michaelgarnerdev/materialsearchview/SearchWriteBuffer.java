@@ -0,0 +1,197 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.michaelgarnerdev.materialsearchview.SearchDatabase.DatabaseTaskListener;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * SearchWriteBuffer holds performed searches until they are written to the database, so that a burst of searches is
+ * committed in one transaction. Searches for the same term are coalesced into one pending write that remembers how
+ * many times the term was searched.
+ * <p>
+ * Searches stay visible through {@link #getUncommitted()} from the moment they are added until their batch is
+ * committed, so reads can include them.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+class SearchWriteBuffer {
+    private LinkedHashMap<String, PendingSearch> mPending = new LinkedHashMap<>();
+    private ArrayList<DatabaseTaskListener> mListeners = new ArrayList<>();
+    private final ArrayList<Batch> mInFlight = new ArrayList<>();
+
+    synchronized boolean isEmpty() {
+        return mPending.isEmpty();
+    }
+
+    /**
+     * Adds a performed search, merging it with a pending search for the same term.
+     *
+     * @return The number of distinct terms pending.
+     */
+    synchronized int add(@NonNull SearchSuggestion searchSuggestion) {
+        PendingSearch pending = mPending.get(searchSuggestion.getSearchTerm());
+        if (pending == null) {
+            mPending.put(searchSuggestion.getSearchTerm(), new PendingSearch(searchSuggestion));
+        } else {
+            pending.add(searchSuggestion);
+        }
+        return mPending.size();
+    }
+
+    /**
+     * Adds a listener to be told when the searches pending now have been committed.
+     */
+    synchronized void addListener(@NonNull DatabaseTaskListener listener) {
+        mListeners.add(listener);
+    }
+
+    /**
+     * Takes every pending search for writing. The searches stay visible to reads until {@link #committed(Batch)} is
+     * called with the returned batch.
+     *
+     * @return The batch, or null if nothing is pending.
+     */
+    @Nullable
+    synchronized Batch drain() {
+        if (mPending.isEmpty() && mListeners.isEmpty()) {
+            return null;
+        }
+        Batch batch = new Batch(new ArrayList<>(mPending.values()), mListeners);
+        mPending = new LinkedHashMap<>();
+        mListeners = new ArrayList<>();
+        mInFlight.add(batch);
+        return batch;
+    }
+
+    synchronized void committed(@NonNull Batch batch) {
+        mInFlight.remove(batch);
+    }
+
+    /**
+     * Drops every search that is pending or being committed, for when the history is deleted. Batches that were
+     * drained but not written yet are marked so that they are skipped. Listeners are kept, and told once the next
+     * batch has been handled.
+     */
+    synchronized void discard() {
+        for (Batch batch : mInFlight) {
+            batch.mDropped = true;
+        }
+        mInFlight.clear();
+        mPending = new LinkedHashMap<>();
+    }
+
+    /**
+     * @return The searches that were added but are not committed yet, oldest batch first. A term may appear more than
+     * once if it is both being committed and pending again.
+     */
+    @NonNull
+    synchronized ArrayList<PendingSearch> getUncommitted() {
+        ArrayList<PendingSearch> uncommitted = new ArrayList<>();
+        for (Batch batch : mInFlight) {
+            uncommitted.addAll(batch.mSearches);
+        }
+        // pending searches can still change, so hand out copies
+        for (PendingSearch pending : mPending.values()) {
+            uncommitted.add(new PendingSearch(pending));
+        }
+        return uncommitted;
+    }
+
+    static class Batch {
+        private final ArrayList<PendingSearch> mSearches;
+        private final ArrayList<DatabaseTaskListener> mListeners;
+        private volatile boolean mDropped = false;
+
+        private Batch(@NonNull ArrayList<PendingSearch> searches, @NonNull ArrayList<DatabaseTaskListener> listeners) {
+            mSearches = searches;
+            mListeners = listeners;
+        }
+
+        @NonNull
+        ArrayList<PendingSearch> getSearches() {
+            return mSearches;
+        }
+
+        @NonNull
+        ArrayList<DatabaseTaskListener> getListeners() {
+            return mListeners;
+        }
+
+        /**
+         * @return True if the history was deleted after the batch was drained, so its searches must not be written.
+         */
+        boolean isDropped() {
+            return mDropped;
+        }
+    }
+
+    /**
+     * One or more searches for the same term, summarized as the latest search, a hit count and the frecency of the
+     * hits.
+     */
+    static class PendingSearch {
+        private SearchSuggestion mSuggestion;
+        private final String mKey;
+        private int mCount = 1;
+        private double mFrecency;
+
+        private PendingSearch(@NonNull SearchSuggestion searchSuggestion) {
+            mSuggestion = searchSuggestion;
+            mKey = searchSuggestion.getSearchKey();
+            mFrecency = searchSuggestion.getDateMillis();
+        }
+
+        private PendingSearch(@NonNull PendingSearch pending) {
+            mSuggestion = pending.mSuggestion;
+            mKey = pending.mKey;
+            mCount = pending.mCount;
+            mFrecency = pending.mFrecency;
+        }
+
+        private void add(@NonNull SearchSuggestion searchSuggestion) {
+            if (searchSuggestion.getDateMillis() > mSuggestion.getDateMillis()) {
+                mSuggestion = searchSuggestion;
+            }
+            mCount++;
+            mFrecency = SearchIndex.addToFrecency(mFrecency, searchSuggestion.getDateMillis());
+        }
+
+        /**
+         * @return The latest search for the term.
+         */
+        @NonNull
+        SearchSuggestion getSuggestion() {
+            return mSuggestion;
+        }
+
+        @NonNull
+        String getKey() {
+            return mKey;
+        }
+
+        int getCount() {
+            return mCount;
+        }
+
+        double getFrecency() {
+            return mFrecency;
+        }
+    }
+}
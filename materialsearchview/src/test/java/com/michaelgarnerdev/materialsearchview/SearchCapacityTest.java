@@ -0,0 +1,109 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.readStoredTerms;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.search;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchCapacityTest checks that the history is trimmed to the maximum number of searches persisted, least recently
+ * searched first, and only once it has grown past the slack.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchCapacityTest {
+    private static final int MAX_SEARCHES = 10;
+
+    @Before
+    public void setUp() {
+        SearchDatabaseTestHelper.open();
+        SearchDatabase.setMaxSearchesPersisted(MAX_SEARCHES);
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabaseTestHelper.close();
+    }
+
+    @Test
+    public void evictsOldestSearchesOncePastSlack() {
+        for (int i = 1; i <= 25; i++) {
+            search("term " + i, i);
+        }
+        SearchDatabase.flushPendingSearches();
+        ArrayList<String> stored = readStoredTerms();
+        assertEquals(MAX_SEARCHES, stored.size());
+        for (int i = 0; i < MAX_SEARCHES; i++) {
+            assertEquals("term " + (25 - i), stored.get(i));
+        }
+    }
+
+    @Test
+    public void keepsSearchesWithinSlack() {
+        // 10% of 10 rounds to the minimum slack of one search
+        for (int i = 1; i <= MAX_SEARCHES + 1; i++) {
+            search("term " + i, i);
+        }
+        SearchDatabase.flushPendingSearches();
+        assertEquals(MAX_SEARCHES + 1, readStoredTerms().size());
+        search("term 12", 12);
+        SearchDatabase.flushPendingSearches();
+        ArrayList<String> stored = readStoredTerms();
+        assertEquals(MAX_SEARCHES, stored.size());
+        assertFalse(stored.contains("term 1"));
+        assertFalse(stored.contains("term 2"));
+        assertTrue(stored.contains("term 12"));
+    }
+
+    @Test
+    public void evictsByLastSearchDate() {
+        for (int i = 1; i <= MAX_SEARCHES; i++) {
+            search("term " + i, i);
+        }
+        SearchDatabase.flushPendingSearches();
+        // searching the oldest term again makes it the most recent
+        search("term 1", 100);
+        search("term 11", 101);
+        search("term 12", 102);
+        SearchDatabase.flushPendingSearches();
+        ArrayList<String> stored = readStoredTerms();
+        assertEquals(Arrays.asList("term 12", "term 11", "term 1", "term 10", "term 9", "term 8", "term 7", "term 6",
+                "term 5", "term 4"), stored);
+    }
+
+    @Test
+    public void noLimitKeepsEverySearch() {
+        SearchDatabase.setMaxSearchesPersisted(0);
+        for (int i = 1; i <= 50; i++) {
+            search("term " + i, i);
+        }
+        SearchDatabase.flushPendingSearches();
+        assertEquals(50, readStoredTerms().size());
+    }
+}
@@ -0,0 +1,91 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import org.robolectric.Robolectric;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+/**
+ * SearchDatabaseTestHelper opens the shared search database for a Robolectric test, with every task run on the calling
+ * thread and an empty history, and closes it again afterwards.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+final class SearchDatabaseTestHelper {
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(@NonNull Runnable runnable) {
+            runnable.run();
+        }
+    };
+
+    private SearchDatabaseTestHelper() {
+    }
+
+    static void open() {
+        SearchDatabase.setExecutors(DIRECT_EXECUTOR, DIRECT_EXECUTOR);
+        SearchDatabase.acquire(RuntimeEnvironment.application);
+        // the database is shared, so start from an empty history whatever an earlier test left behind
+        SearchDatabase.deleteDatabase(null);
+        idle();
+    }
+
+    static void close() {
+        SearchDatabase.setMaxSearchesPersisted(0);
+        SearchDatabase.release();
+        // runs the idle close, which flushes the buffered searches and closes the database
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        idle();
+        SearchDatabase.setExecutors(null, null);
+    }
+
+    /**
+     * Buffers a search performed at the given date, as the view does.
+     */
+    static void search(@NonNull String term, long date) {
+        SearchDatabase.addPerformedSearch(null, new SearchSuggestion(term, date));
+    }
+
+    /**
+     * @return The terms stored in the database, most recently searched first.
+     */
+    @NonNull
+    static ArrayList<String> readStoredTerms() {
+        final ArrayList<String> terms = new ArrayList<>();
+        SearchDatabase.getPerformedSearches(new SearchDatabase.DatabaseReadSearchesListener() {
+            @Override
+            public void onComplete(@NonNull ArrayList<SearchSuggestion> searches) {
+                for (SearchSuggestion search : searches) {
+                    terms.add(search.getSearchTerm());
+                }
+            }
+        });
+        idle();
+        return terms;
+    }
+
+    /**
+     * Runs the tasks that were started and delivers their results.
+     */
+    static void idle() {
+        Robolectric.flushBackgroundThreadScheduler();
+        ShadowLooper.runUiThreadTasks();
+    }
+}
@@ -0,0 +1,157 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Collections;
+
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.idle;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.readStoredTerms;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.search;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchDeleteTest checks that deleting the history also drops the searches that were still buffered or being
+ * written, so that they neither come back once written nor keep showing up as suggestions, and that a delete started
+ * without a reference to the database holds one only while it runs.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchDeleteTest {
+
+    @Before
+    public void setUp() {
+        SearchDatabaseTestHelper.open();
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabaseTestHelper.close();
+    }
+
+    @Test
+    public void bufferedSearchIsNotWrittenAfterDelete() {
+        search("cleared", 1);
+        SearchDatabase.deleteDatabase(null);
+        SearchDatabase.flushPendingSearches();
+        idle();
+        assertTrue(readStoredTerms().isEmpty());
+    }
+
+    @Test
+    public void drainedSearchIsNotWrittenAfterDelete() {
+        search("cleared", 1);
+        // the batch is handed to the write executor, but not written yet
+        SearchDatabase.flushPendingSearches();
+        SearchDatabase.deleteDatabase(null);
+        assertTrue(filter("cleared").isEmpty());
+        idle();
+        assertTrue(readStoredTerms().isEmpty());
+        assertTrue(filter("cleared").isEmpty());
+    }
+
+    @Test
+    public void searchAfterDeleteIsKept() {
+        search("cleared", 1);
+        SearchDatabase.deleteDatabase(null);
+        search("kept", 2);
+        SearchDatabase.flushPendingSearches();
+        idle();
+        assertEquals(Collections.singletonList("kept"), readStoredTerms());
+        assertEquals(Collections.singletonList("kept"), filter("k"));
+    }
+
+    @Test
+    public void listenersOfDroppedSearchesAreTold() {
+        final int[] told = new int[1];
+        SearchDatabase.addPerformedSearch(new SearchDatabase.DatabaseTaskListener() {
+            @Override
+            public void onDatabaseEditSuccess() {
+                told[0]++;
+            }
+
+            @Override
+            public void onDatabaseEditFailure() {
+                told[0]++;
+            }
+        }, new SearchSuggestion("cleared", 1));
+        SearchDatabase.deleteDatabase(null);
+        idle();
+        assertEquals(1, told[0]);
+    }
+
+    @Test
+    public void deleteWithoutViewReleasesTheDatabase() {
+        search("cleared", 1);
+        SearchDatabase.flushPendingSearches();
+        idle();
+        // no view holds the database any more, as when the history is cleared from a detached view
+        SearchDatabase.release();
+        final boolean[] deleted = new boolean[1];
+        SearchDatabase.deleteDatabase(RuntimeEnvironment.application, new SearchDatabase.DatabaseTaskListener() {
+            @Override
+            public void onDatabaseEditSuccess() {
+                deleted[0] = true;
+            }
+
+            @Override
+            public void onDatabaseEditFailure() {
+            }
+        });
+        assertNotNull(SearchDatabase.readDatabase());
+        idle();
+        assertTrue(deleted[0]);
+        // the delete let go of its reference, so the idle close goes ahead
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        idle();
+        assertNull(SearchDatabase.readDatabase());
+        SearchDatabase.acquire(RuntimeEnvironment.application);
+        idle();
+        assertTrue(readStoredTerms().isEmpty());
+    }
+
+    /**
+     * Filters without running queued tasks. The index has loaded, so the result is delivered right away.
+     */
+    @NonNull
+    private static ArrayList<String> filter(@NonNull String typed) {
+        final ArrayList<String> terms = new ArrayList<>();
+        SearchDatabase.filterSearchesBy(5, typed, MaterialSearchView.MATCH_MODE_PREFIX,
+                MaterialSearchView.RANKING_MODE_RECENT, null, new SearchDatabase.DatabaseReadSearchesListener() {
+                    @Override
+                    public void onComplete(@NonNull ArrayList<SearchSuggestion> searches) {
+                        for (SearchSuggestion search : searches) {
+                            terms.add(search.getSearchTerm());
+                        }
+                    }
+                });
+        return terms;
+    }
+}
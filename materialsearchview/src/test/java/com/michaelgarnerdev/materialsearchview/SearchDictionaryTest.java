@@ -0,0 +1,107 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SearchDictionaryTest checks that a written dictionary is matched by folded prefix, heaviest first, and suggests
+ * terms the way they were written.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class SearchDictionaryTest {
+    private File mFile;
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = File.createTempFile("dictionary", ".msvd");
+    }
+
+    @After
+    public void tearDown() {
+        //noinspection ResultOfMethodCallIgnored
+        mFile.delete();
+    }
+
+    @Test
+    public void suggestsTermsAsWritten() throws IOException {
+        HashMap<String, Long> weights = new HashMap<>();
+        weights.put("Caf\u00e9 Cr\u00e8me", 5L);
+        weights.put("cafe au lait", 3L);
+        weights.put("Cafeteria", 1L);
+        SearchDictionary dictionary = write(weights);
+        assertEquals(Arrays.asList("Caf\u00e9 Cr\u00e8me", "cafe au lait", "Cafeteria"),
+                startingWith(dictionary, "caf"));
+        assertEquals(Arrays.asList("Caf\u00e9 Cr\u00e8me"), startingWith(dictionary, SearchIndex.toKey("CAF\u00c9 C")));
+    }
+
+    @Test
+    public void foldedDuplicatesAddUpAndShowTheHeaviest() throws IOException {
+        HashMap<String, Long> weights = new HashMap<>();
+        weights.put("New York", 10L);
+        weights.put("new york", 2L);
+        weights.put("New Jersey", 11L);
+        SearchDictionary dictionary = write(weights);
+        assertEquals(2, dictionary.size());
+        assertEquals(Arrays.asList("New York", "New Jersey"), startingWith(dictionary, "new"));
+    }
+
+    @Test
+    public void findsTermsAcrossBlocks() throws IOException {
+        HashMap<String, Long> weights = new HashMap<>();
+        for (int i = 0; i < 1000; i++) {
+            weights.put(String.format(Locale.US, "Term %03d", i), (long) i);
+        }
+        SearchDictionary dictionary = write(weights);
+        assertEquals(Arrays.asList("Term 999", "Term 998", "Term 997"), startingWith(dictionary, "term"));
+        assertEquals(Arrays.asList("Term 429", "Term 428", "Term 427"), startingWith(dictionary, "term 42"));
+        assertEquals(Arrays.asList("Term 000"), startingWith(dictionary, "term 000"));
+        assertEquals(new ArrayList<String>(), startingWith(dictionary, "terms"));
+    }
+
+    @NonNull
+    private SearchDictionary write(@NonNull Map<String, Long> weights) throws IOException {
+        FileOutputStream output = new FileOutputStream(mFile);
+        try {
+            SearchDictionary.write(weights, output);
+        } finally {
+            output.close();
+        }
+        return SearchDictionary.open(mFile);
+    }
+
+    @NonNull
+    private static List<String> startingWith(@NonNull SearchDictionary dictionary, @NonNull String key) {
+        ArrayList<String> results = new ArrayList<>();
+        dictionary.startingWith(key, 3, results);
+        return results;
+    }
+}
@@ -0,0 +1,210 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchFilterReplayTest replays typing, with typos and deletions, through the dead prefixes and the result cache the
+ * way {@link SearchDatabase#filterSearchesBy} consults them, and checks every answer against a full scan of the
+ * searches. Searches are added while typing, including under text that was known to match nothing.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchFilterReplayTest {
+    private static final int LIMIT = 5;
+    private static final int KEYSTROKES = 5000;
+    private static final String[] WORDS = {"android", "apple", "application", "banana", "band", "bandana", "cherry",
+            "chess", "coffee", "cofe", "java", "javascript", "kotlin", "material", "search", "season", "view"};
+    private static final int[] MATCH_MODES = {MaterialSearchView.MATCH_MODE_PREFIX,
+            MaterialSearchView.MATCH_MODE_TOKEN_PREFIX, MaterialSearchView.MATCH_MODE_FULL_TEXT};
+
+    private final ArrayList<SearchSuggestion> mSearches = new ArrayList<>();
+    private final SearchDeadPrefixes mDeadPrefixes = new SearchDeadPrefixes();
+    private final SearchResultCache mCache = new SearchResultCache();
+    private final Random mRandom = new Random(42);
+    private int mDataVersion = 0;
+    private long mDate = 0;
+
+    @Before
+    public void setUp() {
+        for (int i = 0; i < 60; i++) {
+            add(randomWord() + " " + randomWord());
+        }
+    }
+
+    @Test
+    public void replayedKeystrokesMatchFullScan() {
+        for (int matchMode : MATCH_MODES) {
+            StringBuilder typed = new StringBuilder();
+            for (int i = 0; i < KEYSTROKES; i++) {
+                int action = mRandom.nextInt(20);
+                if (action < 2 && typed.length() > 0) {
+                    typed.setLength(typed.length() - 1);
+                } else if (action == 2) {
+                    typed.setLength(0);
+                } else if (action == 3) {
+                    typed.append(' ');
+                } else if (action == 4) {
+                    // a typo
+                    typed.append((char) ('a' + mRandom.nextInt(26)));
+                } else if (action == 5) {
+                    add(typed.length() > 0 && mRandom.nextBoolean()
+                            ? typed + randomWord() : randomWord() + " " + randomWord());
+                } else {
+                    typed.append(nextLetter(typed.toString()));
+                }
+                String key = SearchIndex.toKey(typed.toString());
+                assertEquals("\"" + key + "\" in match mode " + matchMode, scan(key, matchMode),
+                        filter(key, matchMode));
+            }
+        }
+    }
+
+    @Test
+    public void insertUnderDeadPrefixRevivesIt() {
+        for (int matchMode : MATCH_MODES) {
+            String dead = "zebra" + matchMode;
+            assertTrue(filter(dead, matchMode).isEmpty());
+            assertTrue(mDeadPrefixes.isDead(dead + " crossing", matchMode, mDataVersion));
+            add("Zebra" + matchMode + " crossing");
+            assertFalse(mDeadPrefixes.isDead(dead + " crossing", matchMode, mDataVersion));
+            assertEquals(Collections.singletonList(dead + " crossing"), filter(dead + " crossing", matchMode));
+            assertEquals(Collections.singletonList(dead + " crossing"), filter(dead, matchMode));
+        }
+    }
+
+    @Test
+    public void insertUnderCachedPrefixIsFound() {
+        for (int matchMode : MATCH_MODES) {
+            List<String> before = filter("kot", matchMode);
+            add("kotlin coroutines " + matchMode);
+            List<String> after = filter("kotl", matchMode);
+            assertEquals(scan("kotl", matchMode), after);
+            assertTrue(after.contains("kotlin coroutines " + matchMode));
+            assertFalse(before.contains("kotlin coroutines " + matchMode));
+        }
+    }
+
+    @Test
+    public void cacheAnswersNarrowingKeystrokes() {
+        add("Quince tart");
+        add("Quinoa salad");
+        for (String typed : new String[]{"q", "qu", "qui", "quin", "quinc", "quince"}) {
+            filter(typed, MaterialSearchView.MATCH_MODE_PREFIX);
+        }
+        // only the first keystroke reaches the searches, as its result fits within the limit
+        assertEquals(5f / 6, mCache.getHitRate(), 0.001f);
+    }
+
+    /**
+     * Answers typed text the way {@link SearchDatabase#filterSearchesBy} does before the index has loaded, with the
+     * full scan standing in for the database.
+     */
+    @NonNull
+    private List<String> filter(@NonNull String key, int matchMode) {
+        if (mDeadPrefixes.isDead(key, matchMode, mDataVersion)) {
+            return new ArrayList<>();
+        }
+        ArrayList<SearchSuggestion> results = mCache.get(key, matchMode, MaterialSearchView.RANKING_MODE_RECENT,
+                LIMIT, mDataVersion);
+        if (results == null) {
+            results = query(key, matchMode);
+            if (SearchDatabase.narrowsWhenExtended(key, matchMode)) {
+                if (results.isEmpty()) {
+                    mDeadPrefixes.add(key, matchMode, mDataVersion);
+                }
+                mCache.put(key, matchMode, MaterialSearchView.RANKING_MODE_RECENT, LIMIT, mDataVersion, results);
+            }
+        }
+        return toKeys(results);
+    }
+
+    @NonNull
+    private List<String> scan(@NonNull String key, int matchMode) {
+        return toKeys(query(key, matchMode));
+    }
+
+    @NonNull
+    private ArrayList<SearchSuggestion> query(@NonNull String key, int matchMode) {
+        List<String> tokens = SearchTokenizer.getTokens(key);
+        ArrayList<SearchSuggestion> results = new ArrayList<>();
+        for (SearchSuggestion search : mSearches) {
+            if (SearchTokenizer.matches(search.getSearchKey(), key, tokens, matchMode)) {
+                results.add(search);
+            }
+        }
+        Collections.sort(results, new Comparator<SearchSuggestion>() {
+            @Override
+            public int compare(SearchSuggestion first, SearchSuggestion second) {
+                return first.getDateMillis() < second.getDateMillis() ? 1
+                        : first.getDateMillis() > second.getDateMillis() ? -1 : 0;
+            }
+        });
+        return results.size() > LIMIT ? new ArrayList<>(results.subList(0, LIMIT)) : results;
+    }
+
+    private void add(@NonNull String term) {
+        mSearches.add(new SearchSuggestion(term, ++mDate));
+        // as every write to the searches does
+        mDataVersion++;
+    }
+
+    @NonNull
+    private String randomWord() {
+        return WORDS[mRandom.nextInt(WORDS.length)];
+    }
+
+    /**
+     * @return The next letter of a word the typed text is the start of, so that most keystrokes narrow a match.
+     */
+    private char nextLetter(@NonNull String typed) {
+        int wordStart = typed.lastIndexOf(' ') + 1;
+        String word = typed.substring(wordStart);
+        for (int attempt = 0; attempt < 4; attempt++) {
+            String candidate = randomWord();
+            if (candidate.length() > word.length() && candidate.startsWith(word)) {
+                return candidate.charAt(word.length());
+            }
+        }
+        return (char) ('a' + mRandom.nextInt(26));
+    }
+
+    @NonNull
+    private static List<String> toKeys(@NonNull List<SearchSuggestion> searches) {
+        ArrayList<String> keys = new ArrayList<>(searches.size());
+        for (SearchSuggestion search : searches) {
+            keys.add(search.getSearchKey());
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,94 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchFuzzyMatchTest checks that fuzzy lookups over an index of {@link #ENTRIES} searches rank exact prefix matches
+ * above misspelled ones, still find searches through a typo, and rank the best scored searches first. How long the
+ * lookups take is measured on a device by SearchFuzzyBenchmark.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class SearchFuzzyMatchTest {
+    private static final int ENTRIES = 20000;
+    private static final int LIMIT = 5;
+    private static final String[] WORDS = {"running", "shoes", "shirt", "runner", "rain", "jacket", "nike", "adidas",
+            "short", "sport", "watch", "water", "bottle", "red", "blue", "bag", "trail", "socks", "cap", "yoga"};
+
+    private final SearchIndex mIndex = new SearchIndex();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(42);
+        ArrayList<SearchSuggestion> searches = new ArrayList<>(ENTRIES);
+        double[] frecencies = new double[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            String term = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            searches.add(new SearchSuggestion(term, i));
+            frecencies[i] = i;
+        }
+        mIndex.load(searches, frecencies);
+        assertEquals(ENTRIES, mIndex.size());
+    }
+
+    @Test
+    public void exactPrefixMatchesRankFirst() {
+        List<SearchSuggestion> results = mIndex.fuzzyStartingWith("runne", LIMIT,
+                MaterialSearchView.RANKING_MODE_RECENT);
+        assertEquals(LIMIT, results.size());
+        for (SearchSuggestion result : results) {
+            assertTrue(result.getSearchTerm(), result.getSearchTerm().startsWith("runne"));
+        }
+        // a swap is one typo, so the misspelling still finds the searches, with none ranked above an exact match
+        results = mIndex.fuzzyStartingWith("runnign sh", LIMIT, MaterialSearchView.RANKING_MODE_RECENT);
+        assertEquals(LIMIT, results.size());
+        for (SearchSuggestion result : results) {
+            assertTrue(result.getSearchTerm(), result.getSearchTerm().startsWith("running sh"));
+        }
+    }
+
+    @Test
+    public void bestScoredSearchesRankFirst() {
+        // frecency grows with the date here, so the newest search with the prefix ranks first in both modes
+        long newest = -1;
+        for (SearchSuggestion search : mIndex.startingWith("sh", ENTRIES,
+                MaterialSearchView.RANKING_MODE_RECENT)) {
+            newest = Math.max(newest, search.getDateMillis());
+        }
+        for (int rankingMode : new int[]{MaterialSearchView.RANKING_MODE_RECENT,
+                MaterialSearchView.RANKING_MODE_FRECENCY}) {
+            List<SearchSuggestion> results = mIndex.fuzzyStartingWith("sh", LIMIT, rankingMode);
+            assertEquals(LIMIT, results.size());
+            assertEquals(newest, results.get(0).getDateMillis());
+            for (int i = 1; i < results.size(); i++) {
+                assertTrue(results.get(i - 1).getDateMillis() > results.get(i).getDateMillis());
+            }
+        }
+    }
+
+    @Test
+    public void unrelatedTextMatchesNothing() {
+        assertTrue(mIndex.fuzzyStartingWith("xyzzy", LIMIT, MaterialSearchView.RANKING_MODE_FRECENCY).isEmpty());
+    }
+}
@@ -0,0 +1,129 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.idle;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.readStoredTerms;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.search;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * SearchImportTest checks that imported searches rank below the searches the user performed, so that trimming the
+ * history after an import evicts imported searches first.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchImportTest {
+    private static final int MAX_SEARCHES = 10;
+
+    @Before
+    public void setUp() {
+        SearchDatabaseTestHelper.open();
+        SearchDatabase.setMaxSearchesPersisted(MAX_SEARCHES);
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabaseTestHelper.close();
+    }
+
+    @Test
+    public void importedSearchesAreEvictedBeforePerformedOnes() {
+        for (int i = 1; i <= 5; i++) {
+            search("performed " + i, 1000 + i);
+        }
+        SearchDatabase.flushPendingSearches();
+        idle();
+        ArrayList<String> catalogue = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            catalogue.add("imported " + i);
+        }
+        importTerms(catalogue);
+        assertEquals(Arrays.asList("performed 5", "performed 4", "performed 3", "performed 2", "performed 1",
+                "imported 1", "imported 2", "imported 3", "imported 4", "imported 5"), readStoredTerms());
+    }
+
+    @Test
+    public void storedTermKeepsItsDate() {
+        search("performed", 1000);
+        SearchDatabase.flushPendingSearches();
+        idle();
+        importTerms(Arrays.asList("imported", "performed"));
+        assertEquals(Arrays.asList("performed", "imported"), readStoredTerms());
+    }
+
+    @Test
+    public void emptyHistoryImportsInSourceOrder() {
+        importTerms(Arrays.asList("imported 1", "imported 2", "imported 3"));
+        assertEquals(Arrays.asList("imported 1", "imported 2", "imported 3"), readStoredTerms());
+    }
+
+    @Test
+    public void importsBeforeAnyViewIsAttached() {
+        // no view holds the database, and the idle close has already run
+        SearchDatabase.release();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        idle();
+        assertNull(SearchDatabase.readDatabase());
+        final int[] result = new int[2];
+        SearchDatabase.importSearches(RuntimeEnvironment.application,
+                SearchTermSource.of(Arrays.asList("imported 1", "imported 2").iterator()),
+                new SearchDatabase.DatabaseImportListener() {
+                    @Override
+                    public void onImportProgress(int searchesImported) {
+                    }
+
+                    @Override
+                    public void onImportComplete(int searchesImported) {
+                        result[0] = searchesImported;
+                    }
+
+                    @Override
+                    public void onImportFailure(int searchesImported) {
+                        result[1]++;
+                    }
+                });
+        idle();
+        assertEquals(2, result[0]);
+        assertEquals(0, result[1]);
+        // the import let go of the database once it finished, so it closes when idle
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        idle();
+        assertNull(SearchDatabase.readDatabase());
+        SearchDatabase.acquire(RuntimeEnvironment.application);
+        idle();
+        assertEquals(Arrays.asList("imported 1", "imported 2"), readStoredTerms());
+    }
+
+    private static void importTerms(List<String> terms) {
+        SearchDatabase.importSearches(RuntimeEnvironment.application, SearchTermSource.of(terms.iterator()), null);
+        idle();
+    }
+}
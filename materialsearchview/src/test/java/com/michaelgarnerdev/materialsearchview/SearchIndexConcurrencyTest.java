@@ -0,0 +1,190 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchIndexConcurrencyTest has one writer record, re-record and remove generations of searches in batches while
+ * readers query the index, and checks that every read sees one whole snapshot: complete generations with uniform
+ * dates, no gaps, and nothing older than what was published before the read started.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class SearchIndexConcurrencyTest {
+    private static final int GENERATIONS = 3000;
+    private static final int BATCH_SIZE = 40;
+    // generations kept before the oldest is removed
+    private static final int WINDOW = 3;
+    private static final int READERS = 4;
+    private static final int LIMIT = 1000;
+
+    private final SearchIndex mIndex = new SearchIndex();
+    // the last generation whose batch was published, or -1 before the first
+    private final AtomicInteger mPublished = new AtomicInteger(-1);
+    private final AtomicInteger mReads = new AtomicInteger();
+    private final AtomicInteger mViolations = new AtomicInteger();
+    private final AtomicReference<String> mFirstViolation = new AtomicReference<>();
+    private volatile boolean mWriting = true;
+
+    @Test
+    public void readsSeeConsistentSnapshots() throws InterruptedException {
+        Thread[] readers = new Thread[READERS];
+        for (int i = 0; i < readers.length; i++) {
+            readers[i] = new Reader(i % 2 == 0);
+            readers[i].start();
+        }
+        try {
+            write();
+        } finally {
+            mWriting = false;
+        }
+        for (Thread reader : readers) {
+            reader.join();
+        }
+        System.out.println(String.format(Locale.US, "%d batches, %d reads, %d violations", GENERATIONS,
+                mReads.get(), mViolations.get()));
+        assertEquals(mFirstViolation.get(), 0, mViolations.get());
+        assertTrue(mReads.get() > 0);
+        assertEquals(WINDOW * BATCH_SIZE, mIndex.size());
+    }
+
+    /**
+     * Adds a generation of searches in one batch along with the previous generation searched again, then removes the
+     * generation that fell out of the window in another.
+     */
+    private void write() {
+        for (int generation = 0; generation < GENERATIONS; generation++) {
+            List<SearchSuggestion> batch = new ArrayList<>();
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                batch.add(new SearchSuggestion(getTerm(generation, i), getDate(generation)));
+                if (generation > 0) {
+                    batch.add(new SearchSuggestion(getTerm(generation - 1, i), getDate(generation) + 1));
+                }
+            }
+            Collections.shuffle(batch);
+            mIndex.add(batch);
+            if (generation >= WINDOW) {
+                List<String> removed = new ArrayList<>();
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    removed.add(getTerm(generation - WINDOW, i));
+                }
+                mIndex.remove(removed);
+            }
+            mPublished.set(generation);
+        }
+    }
+
+    private static String getTerm(int generation, int item) {
+        return "Gen" + generation + " item" + item;
+    }
+
+    private static long getDate(int generation) {
+        return 1000L * generation;
+    }
+
+    private class Reader extends Thread {
+        private final boolean mByPrefix;
+
+        private Reader(boolean byPrefix) {
+            mByPrefix = byPrefix;
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (mWriting) {
+                    int before = mPublished.get();
+                    List<SearchSuggestion> searches = mByPrefix
+                            ? mIndex.startingWith("gen", LIMIT, MaterialSearchView.RANKING_MODE_RECENT)
+                            : mIndex.withWordsStartingWith("ite", LIMIT, MaterialSearchView.MATCH_MODE_TOKEN_PREFIX,
+                            MaterialSearchView.RANKING_MODE_RECENT);
+                    int after = mPublished.get();
+                    String violation = check(searches, before, after);
+                    int size = mIndex.size();
+                    if (violation == null && (size % BATCH_SIZE != 0 || size > (WINDOW + 1) * BATCH_SIZE)) {
+                        violation = "size " + size;
+                    }
+                    if (violation != null) {
+                        mViolations.incrementAndGet();
+                        mFirstViolation.compareAndSet(null, violation);
+                    }
+                    mReads.incrementAndGet();
+                }
+            } catch (Throwable e) {
+                mViolations.incrementAndGet();
+                mFirstViolation.compareAndSet(null, e.toString());
+            }
+        }
+
+        /**
+         * @return What is wrong with the searches read, or null if they are one whole snapshot published between the
+         * two given generations.
+         */
+        private String check(List<SearchSuggestion> searches, int before, int after) {
+            TreeMap<Integer, List<Long>> dates = new TreeMap<>();
+            for (SearchSuggestion search : searches) {
+                String term = search.getSearchTerm();
+                int generation = Integer.parseInt(term.substring(3, term.indexOf(' ')));
+                List<Long> generationDates = dates.get(generation);
+                if (generationDates == null) {
+                    generationDates = new ArrayList<>();
+                    dates.put(generation, generationDates);
+                }
+                generationDates.add(search.getDateMillis());
+            }
+            if (before >= 0 && (dates.isEmpty() || dates.lastKey() < before)) {
+                return "stale: saw " + dates.keySet() + " after " + before + " was published";
+            }
+            if (dates.isEmpty()) {
+                return null;
+            }
+            if (dates.lastKey() > after + 1) {
+                return "saw " + dates.lastKey() + " before it was published";
+            }
+            if (dates.lastKey() - dates.firstKey() + 1 != dates.size() || dates.size() > WINDOW + 1) {
+                return "generations " + dates.keySet();
+            }
+            for (Map.Entry<Integer, List<Long>> entry : dates.entrySet()) {
+                int generation = entry.getKey();
+                List<Long> generationDates = entry.getValue();
+                if (generationDates.size() != BATCH_SIZE) {
+                    return "torn generation " + generation + ": " + generationDates.size() + " searches";
+                }
+                if (new HashSet<>(generationDates).size() != 1) {
+                    return "torn dates in generation " + generation;
+                }
+                // every generation but the newest was searched again in the batch that added the next one
+                long expected = generation < dates.lastKey() ? getDate(generation + 1) + 1 : getDate(generation);
+                if (generationDates.get(0) != expected) {
+                    return "generation " + generation + " dated " + generationDates.get(0);
+                }
+            }
+            return null;
+        }
+    }
+}
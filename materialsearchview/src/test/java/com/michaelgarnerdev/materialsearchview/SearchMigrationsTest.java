@@ -0,0 +1,188 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SearchMigrationsTest checks that the table rebuild of version 6 copies rows in batches, resumes after an
+ * interruption and leaves the indexes and full text triggers in place, and that the key refold of version 7 resumes
+ * from the position recorded in the database it migrates.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchMigrationsTest {
+    private static final int ROWS = 7;
+    private static final int BATCH_SIZE = 3;
+
+    private SQLiteDatabase mDatabase;
+
+    @Before
+    public void setUp() {
+        mDatabase = createVersion5();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    private static SQLiteDatabase createVersion5() {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        // the schema as version 5 left it
+        database.execSQL("CREATE TABLE searches (_id INTEGER PRIMARY KEY, search_term TEXT, date_searched REAL,"
+                + " search_key TEXT, search_count INTEGER NOT NULL DEFAULT 1, frecency REAL, UNIQUE(search_term))");
+        database.execSQL("CREATE INDEX searches_key_date ON searches (search_key, date_searched)");
+        database.execSQL("CREATE INDEX searches_date ON searches (date_searched)");
+        database.execSQL("CREATE INDEX searches_frecency ON searches (frecency)");
+        database.execSQL("CREATE VIRTUAL TABLE searches_fts USING fts4(search_key)");
+        database.execSQL("CREATE TRIGGER searches_fts_insert AFTER INSERT ON searches"
+                + " BEGIN INSERT INTO searches_fts (docid, search_key) VALUES (new._id, new.search_key); END");
+        for (int i = 1; i <= ROWS; i++) {
+            database.execSQL("INSERT INTO searches (search_term, date_searched, search_key, frecency)"
+                    + " VALUES (?, ?, ?, ?)", new Object[]{"Term " + i, 1000d * i, "term " + i, 1000d * i});
+        }
+        return database;
+    }
+
+    @Test
+    public void rebuildsTableInBatches() {
+        upgrade();
+        assertEquals(ROWS, SearchMigrations.migratePendingRows(mDatabase, BATCH_SIZE));
+        assertMigrated();
+    }
+
+    @Test
+    public void interruptedRebuildResumes() {
+        upgrade();
+        interruptAfterOneBatch(mDatabase, 5);
+        assertEquals(ROWS - BATCH_SIZE, SearchMigrations.migratePendingRows(mDatabase, BATCH_SIZE));
+        assertMigrated();
+    }
+
+    @Test
+    public void interruptedRefoldResumes() {
+        upgradeToVersion6(mDatabase);
+        upgrade(mDatabase, 6, 7);
+        interruptAfterOneBatch(mDatabase, 6);
+        assertEquals(ROWS - BATCH_SIZE, SearchMigrations.migratePendingRows(mDatabase, BATCH_SIZE));
+        assertRefolded(mDatabase);
+    }
+
+    @Test
+    public void refoldStartsOverOnAnotherDatabase() {
+        upgradeToVersion6(mDatabase);
+        upgrade(mDatabase, 6, 7);
+        interruptAfterOneBatch(mDatabase, 6);
+        // a second database, such as another user's, must not pick up where the first one stopped
+        SQLiteDatabase other = createVersion5();
+        try {
+            upgradeToVersion6(other);
+            upgrade(other, 6, 7);
+            assertEquals(ROWS, SearchMigrations.migratePendingRows(other, BATCH_SIZE));
+            assertRefolded(other);
+        } finally {
+            other.close();
+        }
+    }
+
+    @Test
+    public void upgradeAddsLastIdToOldPendingTable() {
+        // the pending migrations table as version 6 created it
+        mDatabase.execSQL("CREATE TABLE pending_migrations (from_version INTEGER PRIMARY KEY)");
+        upgrade(mDatabase, 5, 7);
+        assertEquals(2 * ROWS, SearchMigrations.migratePendingRows(mDatabase, BATCH_SIZE));
+        assertMigrated();
+    }
+
+    private void upgrade() {
+        upgrade(mDatabase, 5, 6);
+    }
+
+    private static void upgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        database.beginTransaction();
+        try {
+            SearchMigrations.upgrade(database, oldVersion, newVersion);
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void upgradeToVersion6(SQLiteDatabase database) {
+        upgrade(database, 5, 6);
+        SearchMigrations.migratePendingRows(database, BATCH_SIZE);
+        // keys written by an older fold
+        database.execSQL("UPDATE searches SET search_key = 'stale ' || _id");
+    }
+
+    // one batch is written before the app is killed
+    private static void interruptAfterOneBatch(SQLiteDatabase database, int fromVersion) {
+        SearchMigrations.Step step = SearchMigrations.getStep(fromVersion);
+        database.beginTransaction();
+        try {
+            assertEquals(BATCH_SIZE, step.migrateRows(database, BATCH_SIZE));
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+        }
+    }
+
+    private static void assertRefolded(SQLiteDatabase database) {
+        assertEquals(ROWS, count(database, "SELECT COUNT(*) FROM searches WHERE search_key = 'term ' || _id"));
+        assertEquals(0, count(database, "SELECT COUNT(*) FROM searches_fts WHERE searches_fts MATCH 'stale'"));
+        assertEquals(ROWS, count(database, "SELECT COUNT(*) FROM searches_fts WHERE searches_fts MATCH 'term'"));
+        assertEquals(0, count(database, "SELECT COUNT(*) FROM pending_migrations"));
+    }
+
+    private void assertMigrated() {
+        assertEquals(ROWS, count("SELECT COUNT(*) FROM searches WHERE typeof(date_searched) = 'integer'"));
+        assertEquals(ROWS, count("SELECT COUNT(*) FROM searches WHERE date_searched = _id * 1000"));
+        assertEquals(0, count("SELECT COUNT(*) FROM sqlite_master WHERE name = 'searches_rebuild'"));
+        assertEquals(3, count("SELECT COUNT(*) FROM sqlite_master WHERE type = 'index' AND tbl_name = 'searches'"
+                + " AND name IN ('searches_key_date', 'searches_date', 'searches_frecency')"));
+        assertEquals(0, count("SELECT COUNT(*) FROM pending_migrations"));
+        // the full text index follows the rebuilt table
+        mDatabase.execSQL("INSERT INTO searches (search_term, date_searched, search_key) VALUES ('New', 1, 'new')");
+        mDatabase.execSQL("DELETE FROM searches WHERE search_term = 'Term 1'");
+        assertEquals(1, count("SELECT COUNT(*) FROM searches_fts WHERE searches_fts MATCH 'new'"));
+        assertEquals(ROWS - 1, count("SELECT COUNT(*) FROM searches_fts WHERE searches_fts MATCH 'term'"));
+    }
+
+    private long count(String query) {
+        return count(mDatabase, query);
+    }
+
+    private static long count(SQLiteDatabase database, String query) {
+        Cursor cursor = database.rawQuery(query, null);
+        try {
+            cursor.moveToFirst();
+            return cursor.getLong(0);
+        } finally {
+            cursor.close();
+        }
+    }
+}
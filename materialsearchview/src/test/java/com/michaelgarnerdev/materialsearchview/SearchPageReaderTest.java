@@ -0,0 +1,146 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.idle;
+import static com.michaelgarnerdev.materialsearchview.SearchDatabaseTestHelper.search;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchPageReaderTest checks that the history is read to its end one page at a time, newest first, and that the
+ * reader keeps the database open between pages even once every view has released it.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchPageReaderTest {
+    private static final int SEARCHES = 25;
+    private static final int PAGE_SIZE = 10;
+
+    @Before
+    public void setUp() {
+        SearchDatabaseTestHelper.open();
+        for (int i = 1; i <= SEARCHES; i++) {
+            search("term " + i, i);
+        }
+        SearchDatabase.flushPendingSearches();
+        idle();
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabaseTestHelper.close();
+    }
+
+    @Test
+    public void readsEveryPageNewestFirst() {
+        RecordingListener listener = new RecordingListener(true);
+        SearchDatabase.readSearchPages(RuntimeEnvironment.application, PAGE_SIZE, listener);
+        readToEnd(listener);
+        assertTrue(listener.mComplete);
+        assertFalse(listener.mFailed);
+        assertEquals(3, listener.mPages);
+        assertEquals(SEARCHES, listener.mTerms.size());
+        for (int i = 0; i < SEARCHES; i++) {
+            assertEquals("term " + (SEARCHES - i), listener.mTerms.get(i));
+        }
+    }
+
+    @Test
+    public void databaseStaysOpenBetweenPages() {
+        RecordingListener listener = new RecordingListener(true);
+        SearchDatabase.readSearchPages(RuntimeEnvironment.application, PAGE_SIZE, listener);
+        // the view lets go of the database and the idle close comes due while the pages are read
+        SearchDatabase.release();
+        for (int i = 0; i < 10 && !listener.mComplete && !listener.mFailed; i++) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+            idle();
+        }
+        assertNotNull(SearchDatabase.readDatabase());
+        assertTrue(listener.mComplete);
+        assertEquals(SEARCHES, listener.mTerms.size());
+        SearchDatabase.acquire(RuntimeEnvironment.application);
+    }
+
+    @Test
+    public void stoppingReleasesTheDatabase() {
+        RecordingListener listener = new RecordingListener(false);
+        SearchDatabase.readSearchPages(RuntimeEnvironment.application, PAGE_SIZE, listener);
+        readToEnd(listener);
+        assertEquals(1, listener.mPages);
+        assertFalse(listener.mComplete);
+        // only the view's reference is left, so the database closes once it is released
+        SearchDatabase.release();
+        ShadowLooper.runUiThreadTasksIncludingDelayedTasks();
+        idle();
+        assertNull(SearchDatabase.readDatabase());
+        SearchDatabase.acquire(RuntimeEnvironment.application);
+        idle();
+    }
+
+    private static void readToEnd(@NonNull RecordingListener listener) {
+        for (int i = 0; i < 10 && !listener.mComplete && !listener.mFailed; i++) {
+            idle();
+        }
+    }
+
+    private static class RecordingListener implements SearchDatabase.DatabaseReadSearchPagesListener {
+        private final boolean mReadAll;
+        private final ArrayList<String> mTerms = new ArrayList<>();
+        private int mPages = 0;
+        private boolean mComplete = false;
+        private boolean mFailed = false;
+
+        private RecordingListener(boolean readAll) {
+            mReadAll = readAll;
+        }
+
+        @Override
+        public boolean onPage(@NonNull ArrayList<SearchSuggestion> searches) {
+            mPages++;
+            for (SearchSuggestion search : searches) {
+                mTerms.add(search.getSearchTerm());
+            }
+            return mReadAll;
+        }
+
+        @Override
+        public void onComplete() {
+            mComplete = true;
+        }
+
+        @Override
+        public void onFailure() {
+            mFailed = true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import android.database.Cursor;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * SearchQueryPlanTest checks with EXPLAIN QUERY PLAN that the suggestion queries are answered from the indexes rather
+ * than by scanning the searches table.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchQueryPlanTest {
+
+    @Before
+    public void setUp() {
+        SearchDatabaseTestHelper.open();
+    }
+
+    @After
+    public void tearDown() {
+        SearchDatabaseTestHelper.close();
+    }
+
+    @Test
+    public void prefixQuerySearchesKeyDateIndex() {
+        String key = SearchIndex.toKey("Caf");
+        String plan = explain(SearchDatabase.getStartsWithQuery(true, MaterialSearchView.RANKING_MODE_RECENT),
+                key, SearchDatabase.getPrefixUpperBound(key), "5");
+        assertTrue(plan, plan.contains("searches_key_date"));
+        assertNoTableScan(plan);
+    }
+
+    @Test
+    public void recentQueryReadsDateIndexInOrder() {
+        String plan = explain(SearchDatabase.getRecentSearchesQuery(MaterialSearchView.RANKING_MODE_RECENT), "5");
+        assertTrue(plan, plan.contains("searches_date"));
+        assertNoTableScan(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    @Test
+    public void frecencyQueryReadsFrecencyIndexInOrder() {
+        String plan = explain(SearchDatabase.getRecentSearchesQuery(MaterialSearchView.RANKING_MODE_FRECENCY), "5");
+        assertTrue(plan, plan.contains("searches_frecency"));
+        assertNoTableScan(plan);
+        assertFalse(plan, plan.contains("TEMP B-TREE"));
+    }
+
+    private static String explain(String query, String... args) {
+        Cursor cursor = SearchDatabase.readDatabase().rawQuery("EXPLAIN QUERY PLAN " + query, args);
+        StringBuilder plan = new StringBuilder();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                plan.append(cursor.getString(detail)).append('\n');
+            }
+        } finally {
+            cursor.close();
+        }
+        return plan.toString();
+    }
+
+    private static void assertNoTableScan(String plan) {
+        for (String step : plan.split("\n")) {
+            assertFalse(plan, step.startsWith("SCAN") && !step.contains("INDEX"));
+        }
+    }
+}
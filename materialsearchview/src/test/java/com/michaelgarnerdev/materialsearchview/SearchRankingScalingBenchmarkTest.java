@@ -0,0 +1,102 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SearchRankingScalingBenchmarkTest ranks word prefix queries that match most of {@link #ENTRIES} searches on 1, 2, 4
+ * and 8 threads, and checks that every thread count returns the same searches. The best time of each is printed, to
+ * show how ranking scales with the cores of the machine running it.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 23, manifest = Config.NONE)
+public class SearchRankingScalingBenchmarkTest {
+    private static final int ENTRIES = 200000;
+    private static final int LIMIT = 8;
+    private static final int[] THREADS = {1, 2, 4, 8};
+    private static final int WARM_UP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final String[] WORDS = {"apple", "amber", "art", "audio", "auto", "bag", "red", "run", "shoes",
+            "nike"};
+    private static final String[] TYPED = {"a", "apple r", "r"};
+
+    private final SearchIndex mIndex = new SearchIndex();
+
+    @Before
+    public void setUp() {
+        Random random = new Random(3);
+        ArrayList<SearchSuggestion> searches = new ArrayList<>(ENTRIES);
+        double[] frecencies = new double[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            String term = WORDS[random.nextInt(WORDS.length)] + " " + WORDS[random.nextInt(WORDS.length)] + " " + i;
+            searches.add(new SearchSuggestion(term, random.nextInt(1 << 30)));
+            frecencies[i] = random.nextDouble();
+        }
+        mIndex.load(searches, frecencies);
+    }
+
+    @After
+    public void tearDown() {
+        SearchIndex.setRankingParallelism(0);
+    }
+
+    @Test
+    public void rankingScalesWithThreads() {
+        List<List<SearchSuggestion>> expected = null;
+        for (int threads : THREADS) {
+            SearchIndex.setRankingParallelism(threads);
+            List<List<SearchSuggestion>> results = new ArrayList<>();
+            StringBuilder line = new StringBuilder(String.format(Locale.US, "%d threads:", threads));
+            for (String typed : TYPED) {
+                for (int round = 0; round < WARM_UP_ROUNDS; round++) {
+                    rank(typed);
+                }
+                long best = Long.MAX_VALUE;
+                for (int round = 0; round < MEASURED_ROUNDS; round++) {
+                    long start = System.nanoTime();
+                    rank(typed);
+                    best = Math.min(best, System.nanoTime() - start);
+                }
+                results.add(rank(typed));
+                line.append(String.format(Locale.US, " \"%s\" %.2f ms", typed, best / 1e6));
+            }
+            System.out.println(line);
+            if (expected == null) {
+                expected = results;
+            } else {
+                assertEquals(expected, results);
+            }
+        }
+    }
+
+    private List<SearchSuggestion> rank(String typed) {
+        return mIndex.withWordsStartingWith(typed, LIMIT, MaterialSearchView.MATCH_MODE_TOKEN_PREFIX,
+                MaterialSearchView.RANKING_MODE_FRECENCY);
+    }
+}
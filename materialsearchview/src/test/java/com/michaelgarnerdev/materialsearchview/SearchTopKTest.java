@@ -0,0 +1,81 @@
+package com.michaelgarnerdev.materialsearchview;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * SearchTopKTest checks that {@link SearchTopK} keeps the same candidates, in the same order, as a stable full sort
+ * truncated to the same number of slots, including ties and fewer candidates than slots.
+ * <p>
+ * Copyright 2017 Michael Garner (mgarnerdev)
+ * <p>
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * <p>
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * <p>
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+public class SearchTopKTest {
+    private static final int[] CANDIDATES = {1, 4, 1000, 20000};
+    private static final int[] SLOTS = {1, 5, 20};
+    private static final int TIERS = 3;
+
+    @Test
+    public void heapMatchesSortAndTruncate() {
+        for (int candidates : CANDIDATES) {
+            Random random = new Random(candidates);
+            final int[] tiers = new int[candidates];
+            final double[] scores = new double[candidates];
+            for (int i = 0; i < candidates; i++) {
+                tiers[i] = random.nextInt(TIERS);
+                // dates in whole days, so that many scores tie
+                scores[i] = random.nextInt(Math.max(1, candidates / 10));
+            }
+            Comparator<Integer> bestFirst = new Comparator<Integer>() {
+                @Override
+                public int compare(Integer first, Integer second) {
+                    if (tiers[first] != tiers[second]) {
+                        return tiers[first] < tiers[second] ? -1 : 1;
+                    }
+                    // the sort is stable, so ties keep the order they were offered in
+                    return Double.compare(scores[second], scores[first]);
+                }
+            };
+            for (int slots : SLOTS) {
+                assertEquals("n=" + candidates + " K=" + slots, sortAndTruncate(candidates, slots, bestFirst),
+                        rankWithHeap(tiers, scores, slots));
+            }
+        }
+    }
+
+    private static List<Integer> rankWithHeap(int[] tiers, double[] scores, int slots) {
+        SearchTopK<Integer> best = new SearchTopK<>(slots);
+        for (int i = 0; i < tiers.length; i++) {
+            best.offer(i, tiers[i], scores[i]);
+        }
+        return best.toBestFirst();
+    }
+
+    private static List<Integer> sortAndTruncate(int candidates, int slots, Comparator<Integer> bestFirst) {
+        Integer[] sorted = new Integer[candidates];
+        for (int i = 0; i < candidates; i++) {
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, bestFirst);
+        return new ArrayList<>(Arrays.asList(sorted).subList(0, Math.min(slots, candidates)));
+    }
+}